@@ -0,0 +1,42 @@
+package com.gemina.benchmarks;
+
+import com.gemina.mainframe.Game;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+//Screen to world conversions used by the zoom and the mouse callback, run without a window
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CameraBenchmark {
+
+    Game game;
+    double cursorX;
+    double cursorY;
+    boolean zoomOut;
+
+    @Setup
+    public void setup(){
+        game = new Game();
+        game.generateMap(256, 256);
+    }
+
+    @Benchmark
+    public double mouseToCamera(){
+        cursorX = (cursorX + 7.5) % 840;
+        cursorY = (cursorY + 3.25) % 640;
+        return game.toCameraX(game.toWindowX(cursorX)) + game.toCameraY(game.toWindowY(cursorY));
+    }
+
+    //alternates zoom directions so the camera stays between its limits
+    @Benchmark
+    public double updateZoomLevel(){
+        zoomOut = !zoomOut;
+        game.updateZoomLevel(zoomOut, 420, 320);
+        return game.viewX + game.cameraWidth;
+    }
+}
@@ -0,0 +1,71 @@
+package com.gemina.benchmarks;
+
+import com.gemina.mainframe.Game;
+import com.gemina.mainframe.TerrainGrid;
+import com.gemina.mainframe.Tile;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+//Map generation and full grid scans, run without a GL context
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapBenchmark {
+
+    @Param({"256", "1024"})
+    int size;
+
+    Game game;
+    TerrainGrid terrain;
+    double[] vertices = new double[8];
+
+    @Setup
+    public void setup(){
+        game = new Game();
+        terrain = game.generateMap(size, size);
+    }
+
+    @Benchmark
+    public TerrainGrid generateMap(){
+        return game.generateMap(size, size);
+    }
+
+    @Benchmark
+    public long movementScan(){
+        long total = 0;
+        for (int y = 0; y < terrain.getHeight(); y++) {
+            for (int x = 0; x < terrain.getWidth(); x++) {
+                total += terrain.getMovement(x, y);
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public int capturePointScan(){
+        int count = 0;
+        byte[] ids = terrain.getIds();
+        for (int i = 0; i < ids.length; i++) {
+            if (Tile.isCapturePoint(ids[i])) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    //through the Tile view, as callers holding a single tile do
+    @Benchmark
+    public double tileVertices(){
+        double total = 0;
+        for (int y = 0; y < terrain.getHeight(); y++) {
+            for (int x = 0; x < terrain.getWidth(); x++) {
+                total += terrain.getTile(x, y).getVertices(vertices)[7];
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,49 @@
+package com.gemina.benchmarks;
+
+import com.gemina.mainframe.MapGenerator;
+import com.gemina.mainframe.TerrainGrid;
+import com.gemina.pathfinding.PathFinder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+//Route and movement range queries on a fixed seeded map, run without a GL context
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathBenchmark {
+
+    @Param({"256", "1024"})
+    int size;
+
+    @Param({"6"})
+    int budget;
+
+    TerrainGrid terrain;
+    PathFinder finder;
+    int query;
+
+    @Setup
+    public void setup(){
+        terrain = new MapGenerator(1).generate(size, size);
+        finder = new PathFinder(terrain);
+    }
+
+    @Benchmark
+    public int findPath(){
+        //fixed walk over start points so every invocation does comparable work
+        int start = (query++ * 7919) % (size * size);
+        int x = start % size;
+        int y = start / size;
+        return finder.findPath(x, y, (x + 40) % size, (y + 30) % size);
+    }
+
+    @Benchmark
+    public int findReachable(){
+        int start = (query++ * 7919) % (size * size);
+        return finder.findReachable(start % size, start / size, budget);
+    }
+}
@@ -0,0 +1,59 @@
+package com.gemina.benchmarks;
+
+import com.gemina.units.SpatialHash;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+//Hover, box select and radius queries against many units scattered over a 1024 tile map
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UnitQueryBenchmark {
+
+    static final int TILE = 64;
+    static final double WORLD = 1024 * TILE;
+
+    @Param({"10000", "50000"})
+    int count;
+
+    SpatialHash units;
+    SplittableRandom random;
+
+    @Setup
+    public void setup(){
+        units = new SpatialHash(WORLD, WORLD, TILE);
+        random = new SplittableRandom(1);
+        for (int i = 0; i < count; i++) {
+            units.insert(i, random.nextDouble(WORLD), random.nextDouble(WORLD));
+        }
+    }
+
+    @Benchmark
+    public int hover(){
+        return units.queryPoint(random.nextDouble(WORLD), random.nextDouble(WORLD), 24);
+    }
+
+    @Benchmark
+    public int boxSelect(){
+        //roughly a screen of 13 by 10 tiles
+        double x = random.nextDouble(WORLD);
+        double y = random.nextDouble(WORLD);
+        return units.queryRect(x, y, x + 840, y + 640);
+    }
+
+    @Benchmark
+    public int radius(){
+        return units.queryRadius(random.nextDouble(WORLD), random.nextDouble(WORLD), 4 * TILE);
+    }
+
+    @Benchmark
+    public void move(){
+        int unit = random.nextInt(count);
+        units.move(unit, random.nextDouble(WORLD), random.nextDouble(WORLD));
+    }
+}
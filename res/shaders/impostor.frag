@@ -0,0 +1,17 @@
+#version 330 core
+
+in vec2 uv;
+in vec2 tile;
+
+//the chunk impostors, laid out like the map
+uniform sampler2D image;
+//brightness per tile from the fog of war, sampled with nearest filtering
+uniform sampler2D fog;
+uniform vec2 mapSize;
+
+out vec4 color;
+
+void main() {
+    color = texture(image, uv);
+    color.rgb *= texture(fog, tile / mapSize).r;
+}
@@ -0,0 +1,19 @@
+#version 330 core
+
+//tile grid position and impostor texture coordinate
+layout(location = 0) in vec2 position;
+layout(location = 1) in vec2 texCoord;
+
+//visible world rectangle: left, bottom, right, top
+uniform vec4 view;
+uniform vec2 tileSize;
+
+out vec2 uv;
+out vec2 tile;
+
+void main() {
+    vec2 world = position * tileSize;
+    gl_Position = vec4((world - view.xy) / (view.zw - view.xy) * 2.0 - 1.0, 0.0, 1.0);
+    uv = texCoord;
+    tile = position;
+}
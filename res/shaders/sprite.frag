@@ -0,0 +1,11 @@
+#version 330 core
+
+in vec2 uv;
+
+uniform sampler2D atlas;
+
+out vec4 color;
+
+void main() {
+    color = texture(atlas, uv);
+}
@@ -0,0 +1,19 @@
+#version 330 core
+
+//unit quad corner from 0,0 to 1,1 and the sprite center in world units, one per instance
+layout(location = 0) in vec2 corner;
+layout(location = 1) in vec2 center;
+
+//visible world rectangle: left, bottom, right, top
+uniform vec4 view;
+uniform vec2 size;
+//atlas region of the group: u1, v1, u2, v2 with v1 the top of the image
+uniform vec4 region;
+
+out vec2 uv;
+
+void main() {
+    vec2 world = center + (corner - 0.5) * size;
+    gl_Position = vec4((world - view.xy) / (view.zw - view.xy) * 2.0 - 1.0, 0.0, 1.0);
+    uv = vec2(mix(region.x, region.z, corner.x), mix(region.w, region.y, corner.y));
+}
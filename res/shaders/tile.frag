@@ -0,0 +1,17 @@
+#version 330 core
+
+in vec3 uv;
+in vec2 tile;
+
+//layers of the bound texture pack, one per tile id
+uniform sampler2DArray image;
+//brightness per tile from the fog of war, sampled with nearest filtering
+uniform sampler2D fog;
+uniform vec2 mapSize;
+
+out vec4 color;
+
+void main() {
+    color = texture(image, uv);
+    color.rgb *= texture(fog, tile / mapSize).r;
+}
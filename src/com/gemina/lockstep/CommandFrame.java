@@ -0,0 +1,87 @@
+package com.gemina.lockstep;
+
+import java.util.Arrays;
+
+//The commands of one owner for one tick, the unit of the lockstep command stream. Commands are kept in
+//primitive columns and frames are reused, so a tick allocates nothing once the columns are large enough.
+public class CommandFrame {
+
+    //send a unit to tile (x, y)
+    public static final int MOVE = 0;
+    //cancel a unit's order, x and y are unused
+    public static final int STOP = 1;
+
+    int tick = -1;
+    int owner;
+    //checksum carried by a decoded frame, see FrameCodec
+    int checksum;
+
+    private byte[] types = new byte[8];
+    private int[] handles = new int[8];
+    private int[] xs = new int[8];
+    private int[] ys = new int[8];
+    private int size;
+
+    //Empties the frame and stamps it for a tick and owner
+    public void reset(int newTick, int newOwner){
+        tick = newTick;
+        owner = newOwner;
+        checksum = 0;
+        size = 0;
+    }
+
+    public void add(int type, int handle, int x, int y){
+        if (size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            handles = Arrays.copyOf(handles, capacity);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+        }
+        types[size] = (byte) type;
+        handles[size] = handle;
+        xs[size] = x;
+        ys[size] = y;
+        size++;
+    }
+
+    public void copyFrom(CommandFrame other){
+        reset(other.tick, other.owner);
+        checksum = other.checksum;
+        for (int i = 0; i < other.size; i++) {
+            add(other.types[i], other.handles[i], other.xs[i], other.ys[i]);
+        }
+    }
+
+    public int getTick(){
+        return tick;
+    }
+
+    public int getOwner(){
+        return owner;
+    }
+
+    public int getChecksum(){
+        return checksum;
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public int getType(int i){
+        return types[i];
+    }
+
+    public int getHandle(int i){
+        return handles[i];
+    }
+
+    public int getX(int i){
+        return xs[i];
+    }
+
+    public int getY(int i){
+        return ys[i];
+    }
+}
@@ -0,0 +1,115 @@
+package com.gemina.lockstep;
+
+import java.util.Arrays;
+
+//Packs command frames into bytes for the network and replays. Integers are LEB128 varints, values that
+//can be negative are zigzag encoded first, so small numbers of either sign take a single byte. A frame is
+//  tick, owner byte, checksum (4 bytes little endian), command count
+//  per command: type byte, handle, tile x and tile y as deltas to the previous command's tile
+//An idle tick takes 7 to 10 bytes, each order adds 4 to 6 more when orders go to nearby tiles.
+//Frames are self delimiting and can be written back to back. Not thread safe, one codec per thread.
+public class FrameCodec {
+
+    private byte[] buffer = new byte[64];
+    private int length;
+
+    private byte[] data;
+    private int position;
+
+    //Encodes frame with the given checksum, the bytes are valid until the next encode
+    public int encode(CommandFrame frame, int checksum){
+        length = 0;
+        writeVarInt(frame.tick);
+        writeByte(frame.owner);
+        writeByte(checksum);
+        writeByte(checksum >>> 8);
+        writeByte(checksum >>> 16);
+        writeByte(checksum >>> 24);
+        writeVarInt(frame.size());
+        int previousX = 0;
+        int previousY = 0;
+        for (int i = 0; i < frame.size(); i++) {
+            writeByte(frame.getType(i));
+            writeVarInt(frame.getHandle(i));
+            writeVarInt(zigzag(frame.getX(i) - previousX));
+            writeVarInt(zigzag(frame.getY(i) - previousY));
+            previousX = frame.getX(i);
+            previousY = frame.getY(i);
+        }
+        return length;
+    }
+
+    public byte[] getBuffer(){
+        return buffer;
+    }
+
+    public int getLength(){
+        return length;
+    }
+
+    //Decodes the frame starting at offset into frame, returns the offset after it
+    public int decode(byte[] bytes, int offset, int end, CommandFrame frame){
+        data = bytes;
+        position = offset;
+        try {
+            int tick = readVarInt(end);
+            int owner = readByte(end);
+            frame.reset(tick, owner);
+            frame.checksum = readByte(end) | readByte(end) << 8 | readByte(end) << 16 | readByte(end) << 24;
+            int count = readVarInt(end);
+            int x = 0;
+            int y = 0;
+            for (int i = 0; i < count; i++) {
+                int type = readByte(end);
+                int handle = readVarInt(end);
+                x += unzigzag(readVarInt(end));
+                y += unzigzag(readVarInt(end));
+                frame.add(type, handle, x, y);
+            }
+            return position;
+        } finally {
+            data = null;
+        }
+    }
+
+    private void writeByte(int value){
+        if (length == buffer.length) {
+            buffer = Arrays.copyOf(buffer, length * 2);
+        }
+        buffer[length++] = (byte) value;
+    }
+
+    private void writeVarInt(int value){
+        while ((value & ~0x7f) != 0) {
+            writeByte(value & 0x7f | 0x80);
+            value >>>= 7;
+        }
+        writeByte(value);
+    }
+
+    private int readByte(int end){
+        if (position >= end)
+            throw new IllegalStateException("Truncated command frame");
+        return data[position++] & 0xff;
+    }
+
+    private int readVarInt(int end){
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = readByte(end);
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed varint in command frame");
+    }
+
+    static int zigzag(int value){
+        return value << 1 ^ value >> 31;
+    }
+
+    static int unzigzag(int value){
+        return value >>> 1 ^ -(value & 1);
+    }
+}
@@ -0,0 +1,199 @@
+package com.gemina.lockstep;
+
+import com.gemina.mainframe.Match;
+import com.gemina.units.UnitStore;
+
+import java.util.Arrays;
+
+//Advances a match in lockstep with the other peers of a game, each peer owning one owner's units.
+//Commands issued during tick T are scheduled for tick T + delay and sent to the peers as one frame,
+//so they have delay ticks to arrive. A tick is only played once the frames of every owner for it are
+//in, which are then applied in the order of the owners list, so all peers apply the same commands at the
+//same tick. Each frame also carries the sender's checksum after the last tick it played, T - delay - 1;
+//a checksum that differs from the local one of that tick means the simulations diverged.
+//Not thread safe, step and issue from the thread that owns the match.
+public class Lockstep {
+
+    //ticks of frames and checksums kept, the delay has to stay below half of it
+    static final int WINDOW = 64;
+
+    private final Match match;
+    private final int localOwner;
+    private final int[] owners;
+    private final Transport transport;
+    private final int delay;
+    private final int startTick;
+    private final FrameCodec codec = new FrameCodec();
+
+    //commands collected for the next frame sent
+    private final CommandFrame local = new CommandFrame();
+    private final CommandFrame received = new CommandFrame();
+    //frames by (tick % WINDOW) * OWNERS + owner, valid when their tick matches
+    private final CommandFrame[] frames = new CommandFrame[WINDOW * UnitStore.OWNERS];
+    //local checksums by tick % WINDOW, and remote ones waiting for the local tick by (tick % WINDOW) * OWNERS + owner
+    private final int[] checksums = new int[WINDOW];
+    private final int[] checksumTicks = new int[WINDOW];
+    private final int[] remoteChecksums = new int[WINDOW * UnitStore.OWNERS];
+    private final int[] remoteChecksumTicks = new int[WINDOW * UnitStore.OWNERS];
+    private int nextSendTick;
+    private int desyncTick = -1;
+    private long bytesSent;
+
+    private ReplayRecorder recorder;
+
+    //owners lists every owner taking part, localOwner among them. All peers have to start on the same
+    //match state with the same owners and delay
+    public Lockstep(Match match, int localOwner, int[] owners, Transport transport, int delay){
+        if (delay < 1 || delay * 2 >= WINDOW)
+            throw new IllegalArgumentException("Lockstep delay has to be between 1 and " + (WINDOW / 2 - 1));
+        this.match = match;
+        this.localOwner = localOwner;
+        this.owners = owners.clone();
+        this.transport = transport;
+        this.delay = delay;
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = new CommandFrame();
+        }
+        Arrays.fill(checksumTicks, -1);
+        Arrays.fill(remoteChecksumTicks, -1);
+        startTick = (int) match.getTick();
+        nextSendTick = startTick;
+        //nobody issued commands for the first ticks, their empty frames go out right away
+        for (int i = 0; i < delay; i++) {
+            sendLocal();
+        }
+    }
+
+    //Records every tick played from now on, null stops recording
+    public void setRecorder(ReplayRecorder value){
+        recorder = value;
+    }
+
+    //Queues a command of the local owner, it is applied delay ticks from now
+    public void issue(int type, int handle, int x, int y){
+        local.add(type, handle, x, y);
+    }
+
+    //Plays the current tick if the frames of all owners arrived, returns false when still waiting for them
+    public boolean step(){
+        int tick = (int) match.getTick();
+        if (nextSendTick == tick + delay) {
+            sendLocal();
+        }
+        receive();
+        int slot = (tick % WINDOW) * UnitStore.OWNERS;
+        for (int owner : owners) {
+            if (frames[slot + owner].tick != tick) {
+                return false;
+            }
+        }
+        for (int owner : owners) {
+            apply(match, frames[slot + owner]);
+        }
+        match.tick();
+        int checksum = match.checksum();
+        checksums[tick % WINDOW] = checksum;
+        checksumTicks[tick % WINDOW] = tick;
+        for (int owner : owners) {
+            int remote = (tick % WINDOW) * UnitStore.OWNERS + owner;
+            if (remoteChecksumTicks[remote] == tick) {
+                compare(tick, remoteChecksums[remote]);
+            }
+        }
+        if (recorder != null) {
+            //only frames with commands are kept, an idle tick is stored as the first owner's empty frame
+            boolean recorded = false;
+            for (int owner : owners) {
+                if (frames[slot + owner].size() > 0) {
+                    recorder.record(frames[slot + owner], checksum);
+                    recorded = true;
+                }
+            }
+            if (!recorded) {
+                recorder.record(frames[slot + owners[0]], checksum);
+            }
+        }
+        return true;
+    }
+
+    static void apply(Match match, CommandFrame frame){
+        for (int i = 0; i < frame.size(); i++) {
+            switch (frame.getType(i)) {
+                case CommandFrame.MOVE:
+                    match.order(frame.owner, frame.getHandle(i), frame.getX(i), frame.getY(i));
+                    break;
+                case CommandFrame.STOP:
+                    match.cancelOrder(frame.owner, frame.getHandle(i));
+                    break;
+            }
+        }
+    }
+
+    //Sends the local commands as the frame of the next tick to send and keeps it for the local owner
+    private void sendLocal(){
+        int tick = nextSendTick++;
+        local.tick = tick;
+        local.owner = localOwner;
+        //the last tick played is tick - delay - 1, none yet during the first ticks
+        int checked = tick - delay - 1;
+        int checksum = checked >= startTick ? checksums[checked % WINDOW] : 0;
+        int length = codec.encode(local, checksum);
+        transport.send(codec.getBuffer(), length);
+        bytesSent += length;
+        frames[(tick % WINDOW) * UnitStore.OWNERS + localOwner].copyFrom(local);
+        local.reset(tick + 1, localOwner);
+    }
+
+    private void receive(){
+        byte[] data;
+        while ((data = transport.receive()) != null) {
+            codec.decode(data, 0, data.length, received);
+            int owner = received.owner;
+            if (owner == localOwner || !isTakingPart(owner))
+                throw new IllegalStateException("Command frame from owner " + owner + " who does not take part");
+            frames[(received.tick % WINDOW) * UnitStore.OWNERS + owner].copyFrom(received);
+            int checked = received.tick - delay - 1;
+            if (checked < startTick) {
+                continue;
+            }
+            if (checksumTicks[checked % WINDOW] == checked) {
+                compare(checked, received.checksum);
+            } else {
+                remoteChecksums[(checked % WINDOW) * UnitStore.OWNERS + owner] = received.checksum;
+                remoteChecksumTicks[(checked % WINDOW) * UnitStore.OWNERS + owner] = checked;
+            }
+        }
+    }
+
+    private boolean isTakingPart(int owner){
+        for (int o : owners) {
+            if (o == owner) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void compare(int tick, int remote){
+        if (remote != checksums[tick % WINDOW] && desyncTick < 0) {
+            desyncTick = tick;
+        }
+    }
+
+    //First tick after which a peer's checksum differed from the local one, -1 while in sync
+    public int getDesyncTick(){
+        return desyncTick;
+    }
+
+    public boolean isDesynced(){
+        return desyncTick >= 0;
+    }
+
+    public long getBytesSent(){
+        return bytesSent;
+    }
+
+    public int getDelay(){
+        return delay;
+    }
+}
@@ -0,0 +1,48 @@
+package com.gemina.lockstep;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+//In memory transport for tests and single player. Frames sent on one end of a pair arrive on the other
+//end, an end created on its own receives nothing since a lone peer needs no frames from others.
+//Thread safe, the two ends can be stepped on different threads.
+public class LoopbackTransport implements Transport {
+
+    private final Queue<byte[]> inbox = new ConcurrentLinkedQueue<>();
+    private LoopbackTransport peer;
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong framesSent = new AtomicLong();
+
+    //Two connected ends
+    public static LoopbackTransport[] pair(){
+        LoopbackTransport a = new LoopbackTransport();
+        LoopbackTransport b = new LoopbackTransport();
+        a.peer = b;
+        b.peer = a;
+        return new LoopbackTransport[]{a, b};
+    }
+
+    @Override
+    public void send(byte[] data, int length){
+        bytesSent.addAndGet(length);
+        framesSent.incrementAndGet();
+        if (peer != null) {
+            peer.inbox.add(Arrays.copyOf(data, length));
+        }
+    }
+
+    @Override
+    public byte[] receive(){
+        return inbox.poll();
+    }
+
+    public long getBytesSent(){
+        return bytesSent.get();
+    }
+
+    public long getFramesSent(){
+        return framesSent.get();
+    }
+}
@@ -0,0 +1,129 @@
+package com.gemina.lockstep;
+
+import com.gemina.mainframe.Match;
+import com.gemina.mainframe.TerrainGrid;
+import com.gemina.mainframe.Tile;
+import com.gemina.units.UnitStore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+//Plays back a replay written by ReplayRecorder on a new match, without waiting between ticks so a
+//match can be fast-forwarded at whatever speed the simulation runs. The checksum of every tick is
+//verified, a replay that plays out differently than recorded fails with an IllegalStateException.
+//Headless from the command line, prints how fast it played:
+//  java com.gemina.lockstep.ReplayPlayer match.grep
+public class ReplayPlayer {
+
+    //ticks per second the game runs at, to express playback speed as a multiple of real time
+    static final int REAL_TIME_TICK_RATE = 60;
+
+    private final byte[] data;
+    private int position;
+    private final Match match;
+    private final FrameCodec codec = new FrameCodec();
+    private final CommandFrame frame = new CommandFrame();
+
+    private ReplayPlayer(byte[] data){
+        this.data = data;
+        ByteBuffer header = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        if (data.length < ReplayRecorder.HEADER_BYTES || header.getInt(0) != ReplayRecorder.MAGIC)
+            throw new IllegalArgumentException("Not a replay file");
+        if (header.getInt(4) != ReplayRecorder.VERSION)
+            throw new IllegalArgumentException("Unsupported replay version " + header.getInt(4));
+        int width = header.getInt(8);
+        int height = header.getInt(12);
+        int automated = header.getInt(16);
+        int compressedLength = header.getInt(20);
+
+        TerrainGrid terrain = new TerrainGrid(width, height);
+        Inflater inflater = new Inflater();
+        inflater.setInput(data, ReplayRecorder.HEADER_BYTES, compressedLength);
+        try {
+            if (inflater.inflate(terrain.getIds()) != width * height)
+                throw new IllegalArgumentException("Replay terrain is truncated");
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Replay terrain is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+        for (byte id : terrain.getIds()) {
+            if (id < 0 || id >= Tile.ID_COUNT)
+                throw new IllegalArgumentException("Replay terrain has unknown tile id " + (id & 0xFF));
+        }
+        position = ReplayRecorder.HEADER_BYTES + compressedLength;
+
+        match = new Match(terrain);
+        for (int owner = 0; owner < UnitStore.OWNERS; owner++) {
+            match.setAutomated(owner, (automated & 1 << owner) != 0);
+        }
+    }
+
+    public static ReplayPlayer open(Path path) throws IOException {
+        return new ReplayPlayer(Files.readAllBytes(path));
+    }
+
+    public Match getMatch(){
+        return match;
+    }
+
+    public boolean isFinished(){
+        return position >= data.length;
+    }
+
+    //Plays the next recorded tick, returns false at the end of the replay
+    public boolean step(){
+        if (isFinished()) {
+            return false;
+        }
+        int tick = (int) match.getTick();
+        int checksum = 0;
+        int frames = 0;
+        while (position < data.length) {
+            int next = codec.decode(data, position, data.length, frame);
+            if (frame.getTick() != tick) {
+                break;
+            }
+            Lockstep.apply(match, frame);
+            checksum = frame.getChecksum();
+            position = next;
+            frames++;
+        }
+        if (frames == 0)
+            throw new IllegalStateException("Replay has no frame for tick " + tick);
+        match.tick();
+        if (match.checksum() != checksum)
+            throw new IllegalStateException("Replay diverged at tick " + tick);
+        return true;
+    }
+
+    //Plays until the match reaches tick or the replay ends, returns the ticks played
+    public int fastForward(long tick){
+        int played = 0;
+        while (match.getTick() < tick && step()) {
+            played++;
+        }
+        return played;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: ReplayPlayer <replay file>");
+            return;
+        }
+        ReplayPlayer player = open(Paths.get(args[0]));
+        long start = System.nanoTime();
+        int ticks = player.fastForward(Long.MAX_VALUE);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Match match = player.getMatch();
+        System.out.printf("%d ticks, %d turns in %.2f s, %.0fx real time, checksums verified%n",
+                ticks, match.getTurn(), seconds, ticks / (double) REAL_TIME_TICK_RATE / seconds);
+        System.out.println(match.isOver() ? "winner " + match.getWinner() : "not finished");
+    }
+}
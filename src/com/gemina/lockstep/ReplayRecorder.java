@@ -0,0 +1,79 @@
+package com.gemina.lockstep;
+
+import com.gemina.mainframe.Match;
+import com.gemina.mainframe.TerrainGrid;
+import com.gemina.units.UnitStore;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+//Writes the command stream of a match to a replay file, little endian:
+//  header   magic "GREP", version, width, height, automated owners bitmask, compressed terrain length   6 ints
+//  terrain  the tile ids at tick 0, row by row, deflated
+//  frames   FrameCodec frames back to back in tick order, their checksum is the match's after that tick
+//Ticks without commands are stored as one empty frame so every tick's checksum can be verified.
+public class ReplayRecorder implements Closeable {
+
+    static final int MAGIC = 0x50455247;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 6 * Integer.BYTES;
+
+    private final OutputStream out;
+    private final FrameCodec codec = new FrameCodec();
+
+    //Starts a replay of a match that has not been ticked yet
+    public ReplayRecorder(Path path, Match match) throws IOException {
+        if (match.getTick() != 0)
+            throw new IllegalStateException("A replay has to start at tick 0");
+        TerrainGrid terrain = match.getTerrain();
+        byte[] ids = terrain.getIds();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        deflater.setInput(ids);
+        deflater.finish();
+        byte[] compressed = new byte[ids.length + 64];
+        int compressedLength = 0;
+        while (!deflater.finished()) {
+            if (compressedLength == compressed.length) {
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            }
+            compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+        }
+        deflater.end();
+
+        int automated = 0;
+        for (int owner = 0; owner < UnitStore.OWNERS; owner++) {
+            if (match.isAutomated(owner)) {
+                automated |= 1 << owner;
+            }
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(terrain.getWidth()).putInt(terrain.getHeight())
+                .putInt(automated).putInt(compressedLength);
+        out = new BufferedOutputStream(Files.newOutputStream(path));
+        out.write(header.array());
+        out.write(compressed, 0, compressedLength);
+    }
+
+    //Appends a frame applied this tick with the match's checksum after the tick
+    public void record(CommandFrame frame, int checksum){
+        int length = codec.encode(frame, checksum);
+        try {
+            out.write(codec.getBuffer(), 0, length);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to write replay", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,12 @@
+package com.gemina.lockstep;
+
+//Carries encoded command frames between lockstep peers. Frames have to arrive complete and in order,
+//each send is received as one frame by every other peer.
+public interface Transport {
+
+    //Sends length bytes of data as one frame, the bytes are copied before it returns
+    void send(byte[] data, int length);
+
+    //Next received frame or null when none is waiting, never blocks
+    byte[] receive();
+}
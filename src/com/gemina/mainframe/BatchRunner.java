@@ -0,0 +1,48 @@
+package com.gemina.mainframe;
+
+import com.gemina.units.UnitStore;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+//Plays automated matches without a window, one match per task on a pool of worker threads, and prints
+//the results, e.g. for balancing the rules or as a CPU benchmark of the simulation:
+//  java com.gemina.mainframe.BatchRunner 1000 64x64 8
+//Matches are seeded 1 to count, so a run gives the same results on any number of threads.
+public class BatchRunner {
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        String[] dims = (args.length > 1 ? args[1] : "64x64").split("x");
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        int width = Integer.parseInt(dims[0]);
+        int height = Integer.parseInt(dims[1]);
+
+        AtomicIntegerArray wins = new AtomicIntegerArray(UnitStore.OWNERS);
+        AtomicLong turns = new AtomicLong();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        try {
+            pool.submit(() -> IntStream.rangeClosed(1, count).parallel().forEach(seed -> {
+                //the generator shares the pool, its chunk tasks are joined by the match's worker
+                TerrainGrid terrain = new MapGenerator(seed, MapGenerator.DEFAULT_PROFILE, pool).generate(width, height);
+                Match match = new Match(terrain);
+                match.setAutomated(UnitStore.RED, true);
+                match.setAutomated(UnitStore.BLUE, true);
+                match.finish();
+                wins.incrementAndGet(match.getWinner());
+                turns.addAndGet(match.getTurn());
+            })).get();
+        } finally {
+            pool.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%d matches on %dx%d with %d threads in %.2f s%n", count, width, height, threads, seconds);
+        System.out.printf("red %d  blue %d  draw %d%n", wins.get(UnitStore.RED), wins.get(UnitStore.BLUE), wins.get(Match.DRAW));
+        System.out.printf("%.1f turns per match, %.1f matches/s, %.0f turns/s%n",
+                (double) turns.get() / count, count / seconds, turns.get() / seconds);
+    }
+}
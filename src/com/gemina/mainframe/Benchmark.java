@@ -0,0 +1,127 @@
+package com.gemina.mainframe;
+
+import com.gemina.rendering.Model;
+import com.gemina.rendering.RenderStats;
+import com.gemina.units.UnitStore;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.lwjgl.glfw.Callbacks.glfwFreeCallbacks;
+import static org.lwjgl.glfw.GLFW.*;
+import static org.lwjgl.opengl.GL11.*;
+
+//Renders drawGame in a hidden window without v-sync over a scripted camera path and prints frame statistics.
+//The simulation is ticked on the render thread so every run covers the same frames.
+//Without a GPU it runs on Mesa's software rasterizer:
+//  xvfb-run -a env LIBGL_ALWAYS_SOFTWARE=1 java com.gemina.mainframe.Benchmark 600 30x20 256x256 1024x1024
+//A size can add randomly placed units that wander every frame, e.g. 1024x1024:100000
+public class Benchmark {
+
+    //zoom steps are spaced out so the pans in between cover a visible distance
+    static final int ZOOM_INTERVAL = 10;
+
+    public static void main(String[] args) {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 600;
+        String[] sizes = args.length > 1 ? Arrays.copyOfRange(args, 1, args.length) : new String[]{"30x20", "256x256", "1024x1024"};
+
+        Game game = new Game();
+        game.visible = false;
+        game.vsync = false;
+        game.initGLFW();
+        Model model = game.initRendering();
+
+        System.out.println("map        frames   mean ms    p50 ms    p90 ms    p99 ms    max ms   draws/f   binds/f uploads/f");
+        for (String size : sizes) {
+            String[] parts = size.split(":");
+            String[] dims = parts[0].split("x");
+            int units = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+            run(game, model, Integer.parseInt(dims[0]), Integer.parseInt(dims[1]), units, frames, size);
+        }
+
+        glfwFreeCallbacks(game.window);
+        glfwDestroyWindow(game.window);
+        glfwTerminate();
+        glfwSetErrorCallback(null).free();
+    }
+
+    private static void run(Game game, Model model, int width, int height, int units, int frames, String label){
+        game.viewX = 0;
+        game.viewY = 0;
+        game.cameraWidth = game.WINDOW_WIDTH;
+        game.cameraHeight = game.WINDOW_HEIGHT;
+        //without extra units nearly the whole map would be black, so fog only applies to runs with units
+        game.fogEnabled = units > 0;
+        game.loadMap(game.generateMap(width, height, width * 31L + height));
+        SplittableRandom random = new SplittableRandom(units);
+        for (int i = 0; i < units; i++) {
+            game.spawnUnit(random.nextInt(width), random.nextInt(height), UnitStore.RED + random.nextInt(2));
+        }
+
+        long[] times = new long[frames];
+        long draws = 0;
+        long binds = 0;
+        long uploads = 0;
+        for (int frame = 0; frame < frames; frame++) {
+            script(game, frame, frames);
+
+            long start = System.nanoTime();
+            RenderStats.reset();
+            glClear(GL_COLOR_BUFFER_BIT);
+            glEnable(GL_TEXTURE_2D);
+            game.drawGame(model);
+            glfwSwapBuffers(game.window);
+            //wait for the GPU so the time covers the whole frame, not just command submission
+            glFinish();
+            times[frame] = System.nanoTime() - start;
+
+            draws += RenderStats.getDrawCalls();
+            binds += RenderStats.getTextureBinds();
+            uploads += RenderStats.getBufferUploads();
+            glfwPollEvents();
+        }
+
+        long total = 0;
+        for (long time : times) {
+            total += time;
+        }
+        Arrays.sort(times);
+        System.out.printf("%-10s %6d %9.3f %9.3f %9.3f %9.3f %9.3f %9.2f %9.2f %9.2f%n", label, frames,
+                total / 1e6 / frames, percentile(times, 0.5), percentile(times, 0.9), percentile(times, 0.99),
+                times[frames - 1] / 1e6, (double) draws / frames, (double) binds / frames, (double) uploads / frames);
+    }
+
+    //Six equal phases: pan right, pan up, zoom out, pan left, pan down, zoom in
+    private static void script(Game game, int frame, int frames){
+        int phase = frame * 6 / frames;
+        game.panRight = phase == 0;
+        game.panUp = phase == 1;
+        game.panLeft = phase == 3;
+        game.panDown = phase == 4;
+        if (frame % ZOOM_INTERVAL == 0) {
+            if (phase == 2)
+                game.updateZoomLevel(true, -1, -1);
+            else if (phase == 5)
+                game.updateZoomLevel(false, -1, -1);
+        }
+        wander(game.unitStore, frame);
+        game.tick();
+        game.publishSnapshot();
+        game.interpolateCamera(game.consumeSnapshot(), 1);
+    }
+
+    //Moves every unit a little, half of them right and half left, so positions and the hash change each frame
+    private static void wander(UnitStore units, int frame){
+        float step = (frame / 30 % 2 == 0) ? 2 : -2;
+        float[] xs = units.getXs();
+        float[] ys = units.getYs();
+        for (int slot = 0; slot < units.size(); slot++) {
+            units.setPosition(units.getHandle(slot), xs[slot] + ((slot & 1) == 0 ? step : -step), ys[slot]);
+        }
+    }
+
+    private static double percentile(long[] sorted, double p){
+        int index = Math.min(sorted.length - 1, Math.max(0, (int) Math.ceil(p * sorted.length) - 1));
+        return sorted[index] / 1e6;
+    }
+}
@@ -0,0 +1,159 @@
+package com.gemina.mainframe;
+
+import java.util.Arrays;
+
+//Splits the tile grid into square chunks and tracks which of them intersect the camera
+public class ChunkGrid implements TerrainListener {
+
+    public static final int CHUNK_SIZE = 16;
+
+    int mapWidth;
+    int mapHeight;
+    int chunksX;
+    int chunksY;
+
+    //visible range, min inclusive and max exclusive
+    int minTileX, minTileY, maxTileX, maxTileY;
+    int minChunkX, minChunkY, maxChunkX, maxChunkY;
+
+    //chunks whose cached mesh no longer matches their tiles
+    boolean[] dirty;
+    //chunks whose zoomed out impostor no longer matches their tiles, tracked apart from the meshes
+    //since only one of the two is drawn at a time
+    boolean[] staleImpostor;
+
+    public ChunkGrid(int mapWidth, int mapHeight){
+        this.mapWidth = mapWidth;
+        this.mapHeight = mapHeight;
+        chunksX = (mapWidth + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        chunksY = (mapHeight + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        dirty = new boolean[chunksX * chunksY];
+        staleImpostor = new boolean[chunksX * chunksY];
+        markAllDirty();
+    }
+
+    //Flags the chunk holding a tile for a rebuild on the next frame
+    public void markDirty(int tileX, int tileY){
+        int chunk = getChunkIndex(tileX / CHUNK_SIZE, tileY / CHUNK_SIZE);
+        dirty[chunk] = true;
+        staleImpostor[chunk] = true;
+    }
+
+    @Override
+    public void tileChanged(int x, int y, int oldId, int newId){
+        markDirty(x, y);
+    }
+
+    public void markAllDirty(){
+        Arrays.fill(dirty, true);
+        Arrays.fill(staleImpostor, true);
+    }
+
+    //The tiles are unchanged but drawn differently, only the impostors hold pixels of them
+    public void markAllImpostorsStale(){
+        Arrays.fill(staleImpostor, true);
+    }
+
+    public boolean isDirty(int chunkIndex){
+        return dirty[chunkIndex];
+    }
+
+    public void clearDirty(int chunkIndex){
+        dirty[chunkIndex] = false;
+    }
+
+    public boolean isImpostorStale(int chunkIndex){
+        return staleImpostor[chunkIndex];
+    }
+
+    public void clearImpostorStale(int chunkIndex){
+        staleImpostor[chunkIndex] = false;
+    }
+
+    //Recomputes the visible tile and chunk range from a world space rectangle
+    public void updateVisibleRange(double left, double bottom, double right, double top){
+        minTileX = clamp((int) Math.floor(left / Tile.getWidth()), mapWidth);
+        minTileY = clamp((int) Math.floor(bottom / Tile.getHeight()), mapHeight);
+        maxTileX = clamp((int) Math.ceil(right / Tile.getWidth()), mapWidth);
+        maxTileY = clamp((int) Math.ceil(top / Tile.getHeight()), mapHeight);
+
+        minChunkX = minTileX / CHUNK_SIZE;
+        minChunkY = minTileY / CHUNK_SIZE;
+        maxChunkX = (maxTileX + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        maxChunkY = (maxTileY + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    }
+
+    private static int clamp(int value, int max){
+        return Math.min(Math.max(value, 0), max);
+    }
+
+    public boolean isChunkVisible(int chunkX, int chunkY){
+        return chunkX >= minChunkX && chunkX < maxChunkX && chunkY >= minChunkY && chunkY < maxChunkY;
+    }
+
+    public int getChunkIndex(int chunkX, int chunkY){
+        return chunkX + chunkY * chunksX;
+    }
+
+    public int getChunkCount(){
+        return chunksX * chunksY;
+    }
+
+    //First tile column of a chunk
+    public int getTileStartX(int chunkX){
+        return chunkX * CHUNK_SIZE;
+    }
+
+    public int getTileStartY(int chunkY){
+        return chunkY * CHUNK_SIZE;
+    }
+
+    //One past the last tile column of a chunk, smaller for chunks on the map edge
+    public int getTileEndX(int chunkX){
+        return Math.min(mapWidth, (chunkX + 1) * CHUNK_SIZE);
+    }
+
+    public int getTileEndY(int chunkY){
+        return Math.min(mapHeight, (chunkY + 1) * CHUNK_SIZE);
+    }
+
+    public int getChunksX(){
+        return chunksX;
+    }
+
+    public int getChunksY(){
+        return chunksY;
+    }
+
+    public int getMinChunkX(){
+        return minChunkX;
+    }
+
+    public int getMinChunkY(){
+        return minChunkY;
+    }
+
+    public int getMaxChunkX(){
+        return maxChunkX;
+    }
+
+    public int getMaxChunkY(){
+        return maxChunkY;
+    }
+
+    public int getMinTileX(){
+        return minTileX;
+    }
+
+    public int getMinTileY(){
+        return minTileY;
+    }
+
+    public int getMaxTileX(){
+        return maxTileX;
+    }
+
+    public int getMaxTileY(){
+        return maxTileY;
+    }
+}
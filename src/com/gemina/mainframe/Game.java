@@ -1,15 +1,37 @@
 package com.gemina.mainframe;
 
+import com.gemina.lockstep.CommandFrame;
+import com.gemina.lockstep.Lockstep;
+import com.gemina.lockstep.LoopbackTransport;
+import com.gemina.lockstep.ReplayRecorder;
+import com.gemina.profiling.FrameHistogram;
+import com.gemina.profiling.Profiler;
+import com.gemina.rendering.ChunkImpostors;
+import com.gemina.rendering.ChunkMeshes;
+import com.gemina.rendering.DebugOverlay;
+import com.gemina.rendering.FogTexture;
+import com.gemina.rendering.Minimap;
 import com.gemina.rendering.Model;
-import org.lwjgl.BufferUtils;
+import com.gemina.rendering.RenderStats;
+import com.gemina.rendering.Shader;
+import com.gemina.rendering.SpriteBatch;
+import com.gemina.rendering.TextureAtlas;
+import com.gemina.rendering.TileTextures;
+import com.gemina.units.SpatialHash;
+import com.gemina.units.UnitFrames;
+import com.gemina.units.UnitStore;
+import com.gemina.visibility.FogOfWar;
 import org.lwjgl.glfw.GLFWErrorCallback;
 import org.lwjgl.glfw.GLFWVidMode;
 import org.lwjgl.opengl.GL;
 import org.lwjgl.system.MemoryStack;
 
-import java.nio.DoubleBuffer;
+import java.io.IOException;
 import java.nio.IntBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static java.sql.Types.NULL;
 import static org.lwjgl.glfw.Callbacks.*;
@@ -23,7 +45,8 @@ public class Game {
     //setup window variables
     int WINDOW_WIDTH = 840;
     int WINDOW_HEIGHT = 640;
-    int gameScreenWidth = 840;
+    //the map is drawn left of gameScreenWidth, the side panel fills the rest of the window
+    int gameScreenWidth = 640;
     int gameScreenHeight = 640;
     int worldWidth = 640;
     int worldHeight = 640;
@@ -37,17 +60,86 @@ public class Game {
     public double cameraHeight = 640;
     public int windowXOffset = 0;
     public int windowYOffset = 0;
+    //set from key events, simulation thread only
     boolean panLeft = false;
     boolean panRight = false;
     boolean panUp = false;
     boolean panDown = false;
+    //camera position at the previous tick, the drawn camera is interpolated from it
+    double previousViewX = 0;
+    double previousViewY = 0;
+    //camera drawn this frame, only touched by the render thread
+    double renderViewX = 0;
+    double renderViewY = 0;
+    double renderCameraWidth = 840;
+    double renderCameraHeight = 640;
+
+    //setup simulation variables
+    //game logic runs at a fixed rate whatever the frame rate, slow frames are caught up with extra ticks
+    public int tickRate = 60;
+    //longest frame time simulated at once, so a stall does not trigger an endless catch up
+    final double MAX_FRAME_TIME = 0.25;
+    //fraction of the camera width panned per second at cameraSpeed 1
+    final double PAN_PER_SECOND = 0.6;
+    long tickCount = 0;
+    //latest tick handed from the simulation thread to the render thread
+    final AtomicReference<GameSnapshot> snapshot = new AtomicReference<>();
+    Simulation simulation;
+
+    //setup input variables
+    //events from the GLFW callbacks, drained at the start of every tick
+    final InputQueue input = new InputQueue(256);
+    final InputQueue.Handler inputHandler = this::handleInput;
+    //latest glfw cursor position, written by the main thread and read each tick for hovering
+    volatile double cursorX = -1;
+    volatile double cursorY = -1;
+    //cursor position where the left button went down, a release elsewhere is a box select
+    double dragStartX;
+    double dragStartY;
+    //drags shorter than this many pixels are clicks
+    final double DRAG_THRESHOLD = 4;
+
+    //setup picking variables
+    final Picker picker = new Picker(this);
+    //unit positions for hover and selection queries, one cell per tile
+    SpatialHash units;
+    int hoveredTile = -1;
+    int hoveredUnit = -1;
+    int[] selection = new int[64];
+    int selectionCount = 0;
+
+    //setup unit variables
+    //rules of the current map, owned by the simulation thread
+    Match match;
+    //player commands reach the match through the lockstep command stream, over loopback in single player
+    Lockstep lockstep;
+    final int LOCKSTEP_DELAY = 2;
+    //replay file every loaded map is recorded to, null to not record
+    Path replayPath;
+    ReplayRecorder recorder;
+    //every unit of the match, the match's store
+    UnitStore unitStore;
+    //unit positions handed to the render thread after each tick
+    final UnitFrames unitFrames = new UnitFrames();
+
+    //setup visibility variables
+    //owner whose view is drawn, the other owner's units are only drawn where this one sees
+    int playerTeam = UnitStore.RED;
+    boolean fogEnabled = true;
+    FogOfWar fog;
 
     //setup map variables
     int mapWidth;
     int mapHeight;
-    int[][] map;
-    Tile[][] tiles = null;
-    int texturePack = 1;
+    //terrain owned by the simulation and the copy the render thread draws, kept in sync by tileChanges
+    TerrainGrid terrain = null;
+    TerrainGrid renderTerrain = null;
+    TileChangeLog tileChanges;
+    //map file to open at startup, null for a generated map
+    Path mapPath;
+    ChunkGrid chunkGrid;
+    //T cycles through the packs on the simulation thread, the render thread only rebinds
+    volatile int texturePack = 1;
     //Random map generation
     Random random = new Random();
 
@@ -58,11 +150,55 @@ public class Game {
     boolean sPressed = false;
 
     // The window handle
-    private long window;
+    long window;
+    //the benchmark runs in a hidden window without v-sync
+    boolean visible = true;
+    boolean vsync = true;
     //Rendering variables
     final double[] textureCoords = {0, 1, 0, 0, 1, 1, 1, 0};
     final int[] indices = {0, 1, 2, 2, 1, 3};
     final double[] placeholder = {0, 0, 0, 0, 0, 0, 0, 0};
+    ChunkMeshes chunkMeshes;
+    //zoomed out the map is drawn from chunk impostors once tiles are this few screen pixels wide
+    final int IMPOSTOR_TILE_PIXELS = 8;
+    //the first zoom out over a whole map is baked within about this many frames, at least
+    //MIN_BAKES_PER_FRAME chunks a frame so small maps bake at once
+    final int IMPOSTOR_BAKE_FRAMES = 30;
+    final int MIN_BAKES_PER_FRAME = 64;
+    //chunks baked per frame at most, set from the chunk count by loadMap
+    int bakesPerFrame;
+    ChunkImpostors impostors;
+    //one chunk slot the impostors are baked from, the cached meshes are left alone when zoomed out
+    ChunkMeshes bakeMesh;
+    boolean drawingImpostors;
+    Shader tileShader;
+    Shader impostorShader;
+    SpriteBatch unitBatch;
+    Shader spriteShader;
+    FogTexture fogTexture;
+    //unit positions and visibility drawn this frame
+    UnitFrames.Frame renderFrame;
+    //fog state last uploaded, the texture is refreshed when either changes
+    long uploadedFogVersion = -1;
+    final int[] uploadedFogRange = new int[4];
+
+    //setup minimap variables, the minimap sits at the top of the side panel
+    Minimap minimap;
+    final int MINIMAP_MARGIN = 6;
+    //window rectangle of the minimap, fixed per map so both threads read it
+    int minimapX, minimapY, minimapWidth, minimapHeight;
+    //a press on the minimap moved the camera, its release is not a click on the map
+    boolean minimapPressed;
+    final int[] UNIT_DOT_COLORS = {0xc8c8c8ff, 0xff6060ff, 0x70a0ffff};
+
+    //setup debug overlay variables, F3 toggles the overlay and with it the profiler
+    boolean overlayEnabled = false;
+    DebugOverlay overlay;
+    final String[] overlayLines = new String[16];
+    //the overlay text is rebuilt a few times a second, not every frame
+    final long OVERLAY_REFRESH_NANOS = 250_000_000L;
+    long overlayRefreshed;
+    int builtTexturePack = -1;
 
     public void run(){
         //Initialize game engine and game loop
@@ -78,7 +214,7 @@ public class Game {
         glfwSetErrorCallback(null).free();
     }
 
-    private void initGLFW() {
+    void initGLFW() {
         // Setup an error callback. The default implementation
         // will print the error message in System.err.
         GLFWErrorCallback.createPrint(System.err).set();
@@ -91,58 +227,37 @@ public class Game {
         glfwDefaultWindowHints(); // optional, the current window hints are already the default
         glfwWindowHint(GLFW_VISIBLE, GLFW_FALSE); // the window will stay hidden after creation
         glfwWindowHint(GLFW_RESIZABLE, GLFW_TRUE); // the window will be resizable
+        //the shaders need GLSL 330, the overlay and minimap still use the fixed function pipeline
+        glfwWindowHint(GLFW_CONTEXT_VERSION_MAJOR, 3);
+        glfwWindowHint(GLFW_CONTEXT_VERSION_MINOR, 3);
+        glfwWindowHint(GLFW_OPENGL_PROFILE, GLFW_OPENGL_COMPAT_PROFILE);
 
         // Create the window
         window = glfwCreateWindow(WINDOW_WIDTH, WINDOW_HEIGHT, "Gemina Project", NULL, NULL);
         if (window == NULL)
-            throw new RuntimeException("Failed to create the GLFW window");
+            throw new RuntimeException("Failed to create the GLFW window, an OpenGL 3.3 compatibility profile context is required");
 
 
         // Setup a key callback. It will be called every time a key is pressed, repeated or released.
         glfwSetKeyCallback(window, (window, key, scancode, action, mods) -> {
             if (key == GLFW_KEY_ESCAPE && action == GLFW_RELEASE)
                 glfwSetWindowShouldClose(window, true);
-            //camera controls
-            if (key == GLFW_KEY_MINUS && action == GLFW_PRESS)
-                System.out.println("minus pressed");
-            if (key == GLFW_KEY_EQUAL && action == GLFW_PRESS)
-                System.out.println("equal pressed");
-            //pan camera
-            if (key == GLFW_KEY_LEFT && action == GLFW_PRESS)
-                panLeft = true;
-            if (key == GLFW_KEY_LEFT && action == GLFW_RELEASE)
-                panLeft = false;
-            if (key == GLFW_KEY_RIGHT && action == GLFW_PRESS)
-                panRight = true;
-            if (key == GLFW_KEY_RIGHT && action == GLFW_RELEASE)
-                panRight = false;
-            if (key == GLFW_KEY_UP && action == GLFW_PRESS)
-                panUp = true;
-            if (key == GLFW_KEY_UP && action == GLFW_RELEASE)
-                panUp = false;
-            if (key == GLFW_KEY_DOWN && action == GLFW_PRESS)
-                panDown = true;
-            if (key == GLFW_KEY_DOWN && action == GLFW_RELEASE)
-                panDown = false;
-
+            if (key == GLFW_KEY_F3 && action == GLFW_PRESS) {
+                overlayEnabled = !overlayEnabled;
+                Profiler.setEnabled(overlayEnabled);
+            }
+            //everything else is handled by the simulation thread on its next tick
+            if (action != GLFW_REPEAT)
+                input.push(InputQueue.KEY, key, action, cursorX, cursorY);
         });
         //mouse clicks
         glfwSetMouseButtonCallback(window, (window, button, action, mods) -> {
-            DoubleBuffer xpos = BufferUtils.createDoubleBuffer(3);
-            DoubleBuffer ypos = BufferUtils.createDoubleBuffer(3);
-            glfwGetCursorPos(window, xpos, ypos);
-            //convert the glfw coordinate to our coordinate system
-            xpos.put(0, Math.min(Math.max(xpos.get(0), windowXOffset), WINDOW_WIDTH + windowXOffset));
-            ypos.put(0, Math.min(Math.max(ypos.get(0), windowYOffset), WINDOW_HEIGHT + windowYOffset));
-            //relative camera coordinates
-            xpos.put(1, getWidthScalar() * (xpos.get(0) - windowXOffset) + viewX);
-            ypos.put(1, getHeightScalar() * (ypos.get(0) - windowYOffset) + viewY);
-            //true window coordinates
-            xpos.put(2, xpos.get(0) - windowXOffset);
-            ypos.put(2, ypos.get(0) - windowYOffset);
-            if (button == GLFW_MOUSE_BUTTON_LEFT && action == GLFW_PRESS) {
-                System.out.println(xpos.get(1) + "," + ypos.get(1));
-            }
+            input.push(InputQueue.MOUSE_BUTTON, button, action, cursorX, cursorY);
+        });
+        //cursor movement only updates the latest position, events carry it along
+        glfwSetCursorPosCallback(window, (window, x, y) -> {
+            cursorX = x;
+            cursorY = y;
         });
 
         // Get the thread stack and push a new frame
@@ -167,13 +282,232 @@ public class Game {
         // Make the OpenGL context current
         glfwMakeContextCurrent(window);
         // Enable v-sync
-        glfwSwapInterval(1);
+        glfwSwapInterval(vsync ? 1 : 0);
 
         // Make the window visible
-        glfwShowWindow(window);
+        if (visible)
+            glfwShowWindow(window);
     }
 
     private void loop(){
+        Model model = initRendering();
+        loadMap(mapPath != null ? openMapOrFail(mapPath) : generateMap());
+
+        //game logic runs on its own thread, this one only draws the latest snapshot
+        simulation = new Simulation(this);
+        simulation.start();
+
+        // Run the rendering loop until the user has attempted to close
+        // the window or has pressed the ESCAPE key.
+        while (!glfwWindowShouldClose(window)) {
+            Profiler.beginFrame();
+            RenderStats.reset();
+
+            // Poll for window events (key callbacks)
+            long phase = Profiler.begin();
+            glfwPollEvents();
+            Profiler.end(Profiler.POLL, phase);
+
+            //draw between the last two ticks by the time passed since the latest one
+            phase = Profiler.begin();
+            GameSnapshot latest = consumeSnapshot();
+            interpolateCamera(latest, (System.nanoTime() - latest.time) * tickRate / 1e9);
+            Profiler.end(Profiler.SYNC, phase);
+
+            glEnable(GL_TEXTURE_2D);
+
+            drawGame(model);
+
+            phase = Profiler.begin();
+            glfwSwapBuffers(window);
+            Profiler.end(Profiler.SWAP, phase);
+            Profiler.endFrame(RenderStats.getDrawCalls(), RenderStats.getTextureBinds(), RenderStats.getBufferUploads(),
+                    RenderStats.getUploadedBytes());
+        }
+        simulation.stop();
+        closeRecorder();
+        TileTextures.unload();
+    }
+
+    private void closeRecorder(){
+        if (recorder == null) {
+            return;
+        }
+        try {
+            recorder.close();
+        } catch (IOException e) {
+            System.err.println("Failed to finish replay " + replayPath + ": " + e.getMessage());
+        }
+        recorder = null;
+    }
+
+    //Advances the game by one fixed step of 1 / tickRate seconds, simulation thread only
+    void tick(){
+        previousViewX = viewX;
+        previousViewY = viewY;
+        input.drain(inputHandler);
+        updateHover();
+        updateCamera();
+        lockstep.step();
+        tickCount++;
+    }
+
+    //Applies one queued input event, simulation thread only
+    void handleInput(int type, int code, int action, double x, double y){
+        boolean pressed = action == GLFW_PRESS;
+        if (type == InputQueue.MOUSE_BUTTON) {
+            if (code == GLFW_MOUSE_BUTTON_LEFT && pressed && isOverMinimap(x, y)) {
+                centerCameraOnMinimap(x, y);
+                minimapPressed = true;
+            } else if (code == GLFW_MOUSE_BUTTON_LEFT && pressed) {
+                dragStartX = x;
+                dragStartY = y;
+            } else if (code == GLFW_MOUSE_BUTTON_LEFT && action == GLFW_RELEASE && minimapPressed) {
+                minimapPressed = false;
+            } else if (code == GLFW_MOUSE_BUTTON_LEFT && action == GLFW_RELEASE) {
+                if (Math.abs(x - dragStartX) < DRAG_THRESHOLD && Math.abs(y - dragStartY) < DRAG_THRESHOLD)
+                    click(x, y);
+                else
+                    boxSelect(dragStartX, dragStartY, x, y);
+            } else if (code == GLFW_MOUSE_BUTTON_RIGHT && pressed) {
+                orderSelection(x, y);
+            }
+            return;
+        }
+        switch (code) {
+            //camera controls
+            case GLFW_KEY_MINUS:
+                if (pressed)
+                    updateZoomLevel(true, x, y);
+                break;
+            case GLFW_KEY_EQUAL:
+                if (pressed)
+                    updateZoomLevel(false, x, y);
+                break;
+            //pan camera
+            case GLFW_KEY_LEFT:
+                panLeft = pressed;
+                break;
+            case GLFW_KEY_RIGHT:
+                panRight = pressed;
+                break;
+            case GLFW_KEY_UP:
+                panUp = pressed;
+                break;
+            case GLFW_KEY_DOWN:
+                panDown = pressed;
+                break;
+            case GLFW_KEY_T:
+                if (pressed)
+                    texturePack = texturePack % TileTextures.getPackCount() + 1;
+                break;
+        }
+    }
+
+    //Adds a unit centered on a tile and returns its handle
+    int spawnUnit(int tileX, int tileY, int owner){
+        return match.spawnUnit(tileX, tileY, owner);
+    }
+
+    //Tile and unit under the latest cursor position
+    void updateHover(){
+        double x = cursorX;
+        double y = cursorY;
+        hoveredTile = picker.pickTile(x, y);
+        hoveredUnit = picker.pickUnit(x, y, units);
+    }
+
+    //Selects the unit under the cursor, or nothing when there is none
+    void click(double x, double y){
+        int unit = picker.pickUnit(x, y, units);
+        selectionCount = 0;
+        if (unit >= 0) {
+            selection[selectionCount++] = unit;
+        }
+    }
+
+    void boxSelect(double x1, double y1, double x2, double y2){
+        selectionCount = picker.selectUnits(x1, y1, x2, y2, units);
+        if (selectionCount > selection.length) {
+            selection = new int[Integer.highestOneBit(selectionCount) * 2];
+        }
+        for (int i = 0; i < selectionCount; i++) {
+            selection[i] = units.getResult(i);
+        }
+    }
+
+    //Sends the selected units to the tile under the cursor, the match ignores units of other owners
+    void orderSelection(double x, double y){
+        int tile = picker.pickTile(x, y);
+        if (tile < 0) {
+            return;
+        }
+        for (int i = 0; i < selectionCount; i++) {
+            if (unitStore.isAlive(selection[i]) && unitStore.getOwner(selection[i]) == playerTeam) {
+                lockstep.issue(CommandFrame.MOVE, selection[i], tile % mapWidth, tile / mapWidth);
+            }
+        }
+    }
+
+    //Fits the map into the top of the side panel keeping its aspect ratio
+    void layoutMinimap(){
+        int size = WINDOW_WIDTH - gameScreenWidth - 2 * MINIMAP_MARGIN;
+        double scale = Math.max(0, (double) size / Math.max(mapWidth, mapHeight));
+        minimapWidth = (int) Math.round(mapWidth * scale);
+        minimapHeight = (int) Math.round(mapHeight * scale);
+        minimapX = gameScreenWidth + MINIMAP_MARGIN + (size - minimapWidth) / 2;
+        minimapY = MINIMAP_MARGIN + (size - minimapHeight) / 2;
+    }
+
+    boolean isOverMinimap(double cursorX, double cursorY){
+        double x = toWindowX(cursorX);
+        double y = toWindowY(cursorY);
+        return minimapWidth > 0 && x >= minimapX && y >= minimapY && x < minimapX + minimapWidth && y < minimapY + minimapHeight;
+    }
+
+    //Moves the camera so the point clicked on the minimap is in the middle of the game screen
+    void centerCameraOnMinimap(double cursorX, double cursorY){
+        double worldX = (toWindowX(cursorX) - minimapX) / minimapWidth * worldWidth;
+        double worldY = (minimapY + minimapHeight - toWindowY(cursorY)) / minimapHeight * worldHeight;
+        double visibleWidth = cameraWidth * (double) gameScreenWidth / (double) WINDOW_WIDTH;
+        double visibleHeight = cameraHeight * (double) gameScreenHeight / (double) WINDOW_HEIGHT;
+        viewX = Math.max(0, Math.min(worldWidth - visibleWidth, worldX - visibleWidth / 2));
+        viewY = Math.max(0, Math.min(worldHeight - visibleHeight, worldY - visibleHeight / 2));
+        snapCamera();
+    }
+
+    //Hands the state of the latest tick to the render thread
+    void publishSnapshot(){
+        tileChanges.publish(tickCount);
+        unitFrames.publish(unitStore, fog.getVisible(playerTeam), fog.getExplored(playerTeam), fog.getVersion(), tickCount);
+        snapshot.set(new GameSnapshot(tickCount, System.nanoTime(), previousViewX, previousViewY, viewX, viewY,
+                cameraWidth, cameraHeight));
+    }
+
+    //Latest snapshot with its tile changes applied to the render terrain, render thread only
+    GameSnapshot consumeSnapshot(){
+        GameSnapshot latest = snapshot.get();
+        tileChanges.apply(renderTerrain, latest.tick);
+        return latest;
+    }
+
+    //Camera drawn this frame, alpha 0 is the previous tick and 1 the snapshot's tick
+    void interpolateCamera(GameSnapshot state, double alpha){
+        alpha = Math.min(Math.max(alpha, 0), 1);
+        renderViewX = state.previousViewX + (state.viewX - state.previousViewX) * alpha;
+        renderViewY = state.previousViewY + (state.viewY - state.previousViewY) * alpha;
+        renderCameraWidth = state.cameraWidth;
+        renderCameraHeight = state.cameraHeight;
+    }
+
+    //Skips interpolation after a jump of the camera, e.g. a zoom
+    void snapCamera(){
+        previousViewX = viewX;
+        previousViewY = viewY;
+    }
+
+    //Sets up the GL state and the resources shared by every map
+    Model initRendering(){
         // This line is critical for LWJGL's interoperation with GLFW's
         // OpenGL context, or any context that is managed externally.
         // LWJGL detects the context that is current in the current thread,
@@ -190,101 +524,419 @@ public class Game {
         glEnable(GL_BLEND);
         glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
 
-        tiles = generateMap();
+        TileTextures.load();
+        tileShader = new Shader("tile");
+        impostorShader = new Shader("impostor");
+        spriteShader = new Shader("sprite");
+        unitBatch = new SpriteBatch(1024);
+        overlay = new DebugOverlay(WINDOW_WIDTH - gameScreenWidth);
 
-        Model model = new Model(placeholder, textureCoords, indices);
+        return new Model(placeholder, textureCoords, indices);
+    }
 
-        // Run the rendering loop until the user has attempted to close
-        // the window or has pressed the ESCAPE key.
-        while (!glfwWindowShouldClose(window)) {
+    //Replaces the current map, its chunk meshes are built as they come into view
+    void loadMap(TerrainGrid newTerrain){
+        if (chunkMeshes != null) {
+            chunkMeshes.destroy();
+        }
+        if (impostors != null) {
+            impostors.destroy();
+        }
+        terrain = newTerrain;
+        //the match places the starting towers, so it comes before the render copy
+        match = new Match(terrain);
+        for (int owner = UnitStore.RED; owner < UnitStore.OWNERS; owner++) {
+            match.setAutomated(owner, owner != playerTeam);
+        }
+        unitStore = match.getUnits();
+        units = match.getSpatialHash();
+        lockstep = new Lockstep(match, playerTeam, new int[]{playerTeam}, new LoopbackTransport(), LOCKSTEP_DELAY);
+        closeRecorder();
+        if (replayPath != null) {
+            try {
+                recorder = new ReplayRecorder(replayPath, match);
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to start replay " + replayPath, e);
+            }
+            lockstep.setRecorder(recorder);
+        }
+        renderTerrain = terrain.copy();
+        tileChanges = new TileChangeLog(terrain.getWidth());
+        terrain.addListener(tileChanges);
+        chunkGrid = new ChunkGrid(mapWidth, mapHeight);
+        renderTerrain.addListener(chunkGrid);
+        if (minimap != null) {
+            minimap.destroy();
+        }
+        minimap = new Minimap(mapWidth, mapHeight, renderTerrain.getIds());
+        renderTerrain.addListener((x, y, oldId, newId) -> minimap.tileChanged(x, y, newId));
+        layoutMinimap();
+        if (fog != null) {
+            fog.destroy();
+        }
+        fog = new FogOfWar(terrain, unitStore);
+        unitFrames.reset();
+        selectionCount = 0;
+        tickCount = 0;
+        snapCamera();
+        publishSnapshot();
+        chunkMeshes = new ChunkMeshes(chunkGrid.getChunkCount(), ChunkGrid.CHUNK_SIZE * ChunkGrid.CHUNK_SIZE);
+        builtTexturePack = -1;
+        if (fogTexture != null) {
+            fogTexture.destroy();
+        }
+        fogTexture = new FogTexture(mapWidth, mapHeight);
+        impostors = new ChunkImpostors(mapWidth, mapHeight, ChunkGrid.CHUNK_SIZE, Tile.getWidth(), Tile.getHeight());
+        bakesPerFrame = Math.max(MIN_BAKES_PER_FRAME, chunkGrid.getChunkCount() / IMPOSTOR_BAKE_FRAMES);
+        if (bakeMesh == null) {
+            bakeMesh = new ChunkMeshes(1, ChunkGrid.CHUNK_SIZE * ChunkGrid.CHUNK_SIZE);
+        }
+        uploadedFogVersion = -1;
+    }
 
-            // Poll for window events (key callbacks)
-            glfwPollEvents();
+    //Moves the camera by one tick in every direction currently panned
+    void updateCamera(){
+        double step = PAN_PER_SECOND * cameraSpeed / tickRate;
+        if (panLeft) {
+            viewX = Math.max(0, viewX - cameraWidth * step);
+        }
+        if (panRight) {
+            viewX = Math.min(worldWidth - cameraWidth * (double) gameScreenWidth / (double) WINDOW_WIDTH, viewX + cameraWidth * step);
+        }
+        if (panDown) {
+            viewY = Math.max(0, viewY - cameraHeight * step);
+        }
+        if (panUp) {
+            viewY = Math.min(worldHeight - cameraHeight * (double) gameScreenHeight / (double) WINDOW_HEIGHT, viewY + cameraHeight * step);
+        }
+    }
 
-            glEnable(GL_TEXTURE_2D);
 
-            drawGame(model);
+    //Optional arguments: a map file written by saveMap, a random map is generated without it,
+    //and --record <file> to write a replay of the match, played back with ReplayPlayer
+    public static void main(String[] args) {
+        Game game = new Game();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--record") && i + 1 < args.length)
+                game.replayPath = Paths.get(args[++i]);
+            else
+                game.mapPath = Paths.get(args[i]);
+        }
+        game.run();
+    }
 
-            //move camera
-            if (panLeft) {
-                viewX = Math.max(0, viewX - cameraWidth * 0.01 * cameraSpeed);
-            }
-            if (panRight) {
-                viewX = Math.min(worldWidth - cameraWidth * (double) gameScreenWidth / (double) WINDOW_WIDTH, viewX + cameraWidth * 0.01 * cameraSpeed);
+    //generate map
+    public TerrainGrid generateMap(){
+        return generateMap(30, 20);
+    }
+
+    public TerrainGrid generateMap(int width, int height){
+        return generateMap(width, height, random.nextLong());
+    }
+
+    //The same seed always gives the same map
+    public TerrainGrid generateMap(int width, int height, long seed){
+        setMapSize(width, height);
+        return new MapGenerator(seed).generate(mapWidth, mapHeight);
+    }
+
+    //Opens a map saved by saveMap, its chunks are decoded as they are first needed
+    public TerrainGrid openMap(Path path) throws IOException {
+        MapFile file = MapFile.open(path);
+        setMapSize(file.getWidth(), file.getHeight());
+        if (file.getTexturePack() < 1 || file.getTexturePack() > TileTextures.getPackCount())
+            throw new IllegalArgumentException("Unknown texture pack " + file.getTexturePack());
+        texturePack = file.getTexturePack();
+        return file.createTerrain();
+    }
+
+    //Writes the simulation's terrain and texture pack, call from the simulation thread or before it starts
+    public void saveMap(Path path) throws IOException {
+        MapFile.save(path, terrain, texturePack);
+    }
+
+    private TerrainGrid openMapOrFail(Path path){
+        try {
+            return openMap(path);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to open map " + path, e);
+        }
+    }
+
+    void setMapSize(int width, int height){
+        mapWidth = width;
+        mapHeight = height;
+        worldWidth = mapWidth * tileLength;
+        worldHeight = mapHeight * tileLength;
+    }
+
+    //Units of every owner in one sprite group each, culled against the drawn camera
+    public void drawUnits(){
+        UnitFrames.Frame frame = renderFrame;
+        float halfWidth = Tile.getWidth() / 2f;
+        float halfHeight = Tile.getHeight() / 2f;
+        float left = (float) Math.min(getViewLeft(), getViewRight()) - halfWidth;
+        float right = (float) Math.max(getViewLeft(), getViewRight()) + halfWidth;
+        float top = (float) Math.min(getViewBottom(), getViewTop()) - halfHeight;
+        float bottom = (float) Math.max(getViewBottom(), getViewTop()) + halfHeight;
+        TextureAtlas atlas = TileTextures.getAtlas();
+
+        unitBatch.begin();
+        for (int owner = 0; owner < UnitStore.OWNERS; owner++) {
+            int region = TileTextures.getUnitRegion(owner);
+            if (region < 0) {
+                continue;
             }
-            if (panDown) {
-                viewY = Math.max(0, viewY - cameraHeight * 0.01 * cameraSpeed);
+            unitBatch.beginGroup(atlas.getU1(region), atlas.getV1(region), atlas.getU2(region), atlas.getV2(region));
+            for (int i = 0; i < frame.size; i++) {
+                float x = frame.x[i];
+                float y = frame.y[i];
+                if (frame.owner[i] == owner && x >= left && x <= right && y >= top && y <= bottom
+                        && (owner == playerTeam || isVisible(frame, x, y))) {
+                    unitBatch.add(x, y);
+                }
             }
-            if (panUp) {
-                viewY = Math.min(worldHeight - cameraHeight * (double) gameScreenHeight / (double) WINDOW_HEIGHT, viewY + cameraHeight * 0.01 * cameraSpeed);
+        }
+        unitBatch.end();
+        if (unitBatch.size() == 0) {
+            return;
+        }
+        atlas.bind();
+        spriteShader.bind();
+        spriteShader.setUniform("view", (float) getViewLeft(), (float) getViewBottom(), (float) getViewRight(), (float) getViewTop());
+        spriteShader.setUniform("size", Tile.getWidth(), Tile.getHeight());
+        spriteShader.setUniform("atlas", 0);
+        unitBatch.draw(spriteShader);
+        spriteShader.unbind();
+    }
+
+    //Background of the side panel, with the profiler readout while the overlay is on
+    void drawSidePanel(){
+        int width = WINDOW_WIDTH - gameScreenWidth;
+        if (width <= 0) {
+            return;
+        }
+        projectTrueWindowCoordinates();
+        if (overlayEnabled && System.nanoTime() - overlayRefreshed > OVERLAY_REFRESH_NANOS) {
+            overlay.setText(overlayLines, updateOverlayText(), gameScreenWidth + 6, minimapY + minimapHeight + 6);
+            overlayRefreshed = System.nanoTime();
+        }
+        overlay.draw(gameScreenWidth, 0, width, WINDOW_HEIGHT, 80, overlayEnabled ? Profiler.getFrames() : null);
+        drawMinimap();
+    }
+
+    //Patches the minimap with this frame's tile and explored changes, then draws it with a dot per unit the
+    //player sees and the frame of the game screen
+    void drawMinimap(){
+        UnitFrames.Frame frame = renderFrame;
+        minimap.updateExplored(fogEnabled ? frame.explored : null, fogEnabled ? frame.fogVersion : -2);
+        minimap.flush();
+        minimap.beginDots();
+        float tileWidth = Tile.getWidth();
+        float tileHeight = Tile.getHeight();
+        for (int i = 0; i < frame.size; i++) {
+            int owner = frame.owner[i];
+            if (owner == playerTeam || isVisible(frame, frame.x[i], frame.y[i])) {
+                minimap.addDot(frame.x[i] / tileWidth, frame.y[i] / tileHeight, UNIT_DOT_COLORS[owner]);
             }
+        }
+        double screenRight = renderViewX + renderCameraWidth * (double) gameScreenWidth / (double) WINDOW_WIDTH;
+        double screenTop = renderViewY + renderCameraHeight * (double) gameScreenHeight / (double) WINDOW_HEIGHT;
+        minimap.draw(minimapX, minimapY, minimapWidth, minimapHeight, (float) (renderViewX / tileWidth),
+                (float) (renderViewY / tileHeight), (float) (screenRight / tileWidth), (float) (screenTop / tileHeight));
+    }
 
-            glfwSwapBuffers(window);
+    //Fills overlayLines from the profiler and the previous frame's counters, returns the line count
+    int updateOverlayText(){
+        FrameHistogram frames = Profiler.getFrames();
+        int line = 0;
+        overlayLines[line++] = String.format("frame %.2f ms  p99 %.2f", frames.getMean() / 1e6, frames.getPercentile(0.99) / 1e6);
+        overlayLines[line++] = String.format("p50 %.2f  max %.2f", frames.getPercentile(0.5) / 1e6, frames.getPercentile(1) / 1e6);
+        for (int phase = 0; phase < Profiler.PHASES; phase++) {
+            overlayLines[line++] = String.format("  %-8s %6.3f ms", Profiler.getPhaseName(phase), Profiler.getPhaseNanos(phase) / 1e6);
         }
+        overlayLines[line++] = String.format("tick %.3f ms  worst %.3f", Profiler.getLastTickNanos() / 1e6,
+                Profiler.getSlowestTickNanos() / 1e6);
+        overlayLines[line++] = String.format("draws %d  binds %d", RenderStats.getDrawCalls(), RenderStats.getTextureBinds());
+        overlayLines[line++] = String.format("uploads %d  %d kB", RenderStats.getBufferUploads(), RenderStats.getUploadedBytes() / 1024);
+        overlayLines[line++] = String.format("units %d  drawn %d", renderFrame.size, RenderStats.getInstances());
+        overlayLines[line++] = String.format("map %dx%d  tick %d", mapWidth, mapHeight, renderFrame.tick);
+        overlayLines[line++] = drawingImpostors ? "impostors " + impostors.getPixelsPerTile() + " px/tile" : "tile meshes";
+        return line;
     }
 
+    //Whether the local player sees the tile under a world position
+    boolean isVisible(UnitFrames.Frame frame, float x, float y){
+        if (!fogEnabled) {
+            return true;
+        }
+        int tileX = Math.min(Math.max((int) (x / Tile.getWidth()), 0), mapWidth - 1);
+        int tileY = Math.min(Math.max((int) (y / Tile.getHeight()), 0), mapHeight - 1);
+        return FogOfWar.get(frame.visible, tileX + tileY * mapWidth);
+    }
 
-    public static void main(String[] args) {
-        new Game().run();
+    //Whether the local player has ever seen a tile of a chunk, chunks never seen are not drawn at all
+    boolean isChunkExplored(int cx, int cy){
+        return !fogEnabled || FogOfWar.anySet(renderFrame.explored, mapWidth, chunkGrid.getTileStartX(cx),
+                chunkGrid.getTileStartY(cy), chunkGrid.getTileEndX(cx), chunkGrid.getTileEndY(cy));
     }
 
-    //generate map
-    public Tile[][] generateMap(){
-        mapWidth = 30;
-        mapHeight = 20;
-        worldWidth = mapWidth * tileLength;
-        worldHeight = mapHeight * tileLength;
-        map = new int[mapWidth][mapHeight];
-        //set a random terrain for each tile
-        for (int i = 0; i < mapWidth; i++) {
-            for (int j = 0; j < mapHeight; j++) {
-                int seed = random.nextInt(20);
-                if(seed <= 3) {
-                    map[i][j] = 1;
+    //Refreshes the fog texture for the visible tiles when the visibility or the visible range changed
+    void updateFogTexture(){
+        int[] range = uploadedFogRange;
+        boolean moved = range[0] != chunkGrid.getMinTileX() || range[1] != chunkGrid.getMinTileY()
+                || range[2] != chunkGrid.getMaxTileX() || range[3] != chunkGrid.getMaxTileY();
+        long version = fogEnabled ? renderFrame.fogVersion : -2;
+        if (version == uploadedFogVersion && (!moved || !fogEnabled)) {
+            return;
+        }
+        if (!fogEnabled) {
+            fogTexture.fill(FogTexture.VISIBLE);
+        } else if (renderFrame.visible.length > 0) {
+            fogTexture.update(renderFrame.visible, renderFrame.explored, chunkGrid.getMinTileX(),
+                    chunkGrid.getMinTileY(), chunkGrid.getMaxTileX(), chunkGrid.getMaxTileY());
+        }
+        uploadedFogVersion = version;
+        range[0] = chunkGrid.getMinTileX();
+        range[1] = chunkGrid.getMinTileY();
+        range[2] = chunkGrid.getMaxTileX();
+        range[3] = chunkGrid.getMaxTileY();
+    }
+
+    public void drawMap(Model model) {
+        updateVisibleChunks();
+        //meshes store texture array layers, which are the same in every pack, so only the impostors
+        //have to be baked again after a pack switch or an edited tile image
+        int pack = texturePack;
+        int reloadedLayers = TileTextures.pollReloads();
+        if (pack != builtTexturePack || reloadedLayers > 0) {
+            chunkGrid.markAllImpostorsStale();
+            builtTexturePack = pack;
+        }
+        drawingImpostors = isFarOut();
+        if (drawingImpostors) {
+            bakeImpostors(pack);
+        } else {
+            //rebuild only visible chunks whose tiles changed, everything else is drawn from its cached mesh
+            for (int cx = chunkGrid.getMinChunkX(); cx < chunkGrid.getMaxChunkX(); cx++) {
+                for (int cy = chunkGrid.getMinChunkY(); cy < chunkGrid.getMaxChunkY(); cy++) {
+                    int chunk = chunkGrid.getChunkIndex(cx, cy);
+                    if (chunkGrid.isDirty(chunk) && isChunkExplored(cx, cy)) {
+                        buildChunk(chunkMeshes, chunk, cx, cy);
+                        chunkGrid.clearDirty(chunk);
+                    }
                 }
-                else if(seed <= 15) {
-                    map[i][j] = 2;
+            }
+        }
+        updateFogTexture();
+        //the camera transform is a uniform, chunk vertices stay in tile units
+        fogTexture.bind(1);
+        Shader shader = drawingImpostors ? impostorShader : tileShader;
+        bindMapShader(shader);
+        shader.setUniform("view", (float) getViewLeft(), (float) getViewBottom(), (float) getViewRight(), (float) getViewTop());
+        shader.setUniform("mapSize", mapWidth, mapHeight);
+        if (drawingImpostors) {
+            //unexplored chunks come out black through the fog like on the tile path
+            impostors.draw(chunkGrid.getMinTileX(), chunkGrid.getMinTileY(), chunkGrid.getMaxTileX(), chunkGrid.getMaxTileY());
+        } else {
+            TileTextures.bindPack(pack);
+            for (int cx = chunkGrid.getMinChunkX(); cx < chunkGrid.getMaxChunkX(); cx++) {
+                for (int cy = chunkGrid.getMinChunkY(); cy < chunkGrid.getMaxChunkY(); cy++) {
+                    //chunks the player has never seen stay black
+                    if (isChunkExplored(cx, cy)) {
+                        chunkMeshes.draw(chunkGrid.getChunkIndex(cx, cy));
+                    }
                 }
-                else if(seed <= 18) {
-                    map[i][j] = 3;
+            }
+            chunkMeshes.endDraw();
+        }
+        shader.unbind();
+    }
+
+    //Whether tiles are small enough on screen that the impostors are drawn instead of the chunk meshes
+    boolean isFarOut(){
+        double tilePixels = Tile.getWidth() * WINDOW_WIDTH / Math.abs(getViewRight() - getViewLeft());
+        return tilePixels <= IMPOSTOR_TILE_PIXELS;
+    }
+
+    //The tile and impostor shaders share their uniforms, both sample their image on unit 0 and fog on unit 1
+    private void bindMapShader(Shader shader){
+        shader.bind();
+        shader.setUniform("tileSize", Tile.getWidth(), Tile.getHeight());
+        shader.setUniform("image", 0);
+        shader.setUniform("fog", 1);
+    }
+
+    //Renders visible explored chunks whose impostor is out of date, up to bakesPerFrame
+    private void bakeImpostors(int pack){
+        int budget = bakesPerFrame;
+        for (int cx = chunkGrid.getMinChunkX(); cx < chunkGrid.getMaxChunkX() && budget > 0; cx++) {
+            for (int cy = chunkGrid.getMinChunkY(); cy < chunkGrid.getMaxChunkY() && budget > 0; cy++) {
+                int chunk = chunkGrid.getChunkIndex(cx, cy);
+                if (!chunkGrid.isImpostorStale(chunk) || !isChunkExplored(cx, cy)) {
+                    continue;
+                }
+                if (budget == bakesPerFrame) {
+                    TileTextures.bindPack(pack);
+                    bindMapShader(tileShader);
+                    impostors.beginBake();
                 }
-                else if(seed <= 19) {
-                    map[i][j] = 4;
+                //a cached mesh that is still current saves building and uploading the chunk again
+                if (chunkMeshes.isBuilt(chunk) && !chunkGrid.isDirty(chunk)) {
+                    impostors.bake(tileShader, chunkMeshes, chunk, cx, cy);
+                } else {
+                    buildChunk(bakeMesh, 0, cx, cy);
+                    impostors.bake(tileShader, bakeMesh, 0, cx, cy);
                 }
+                chunkGrid.clearImpostorStale(chunk);
+                budget--;
             }
         }
-        Tile[][] tiles = new Tile[mapWidth][mapHeight];
-        for (int x = 0; x < mapWidth; x++) {
-            for (int y = 0; y < mapHeight; y++) {
-                tiles[x][y] = new Tile(map[x][y], x, y);
-            }
+        if (budget < bakesPerFrame) {
+            impostors.endBake();
+            tileShader.unbind();
         }
-        return tiles;
     }
 
-    public void drawMap(Model model) {
-        projectRelativeCameraCoordinates();
-        //display tiles
-        for (int i = 0; i < tiles.length; i++) {
-            for (int j = 0; j < tiles[0].length; j++) {
-                tiles[i][j].setTexture(texturePack);
-                model.render(tiles[i][j].getVertices());
-                //TODO - optimize by not rendering tiles offscreen
+    //Uploads the tiles of one chunk into a slot of meshes
+    private void buildChunk(ChunkMeshes meshes, int slot, int cx, int cy) {
+        meshes.begin(slot);
+        for (int j = chunkGrid.getTileStartY(cy); j < chunkGrid.getTileEndY(cy); j++) {
+            for (int i = chunkGrid.getTileStartX(cx); i < chunkGrid.getTileEndX(cx); i++) {
+                int layer = TileTextures.getLayer(renderTerrain.getId(i, j));
+                if (layer < 0) {
+                    continue;
+                }
+                meshes.add(i, j, layer);
             }
         }
+        meshes.end();
+    }
+
+    public void updateVisibleChunks(){
+        chunkGrid.updateVisibleRange(getViewLeft(), getViewBottom(), getViewRight(), getViewTop());
     }
 
 
     //Calls all the draw functions in order
     public void drawGame(Model model) {
+        renderFrame = unitFrames.acquire();
+        long phase = Profiler.begin();
         drawMap(model);
+        Profiler.end(Profiler.DRAW_MAP, phase);
+        phase = Profiler.begin();
+        drawUnits();
+        Profiler.end(Profiler.DRAW_UNITS, phase);
+        phase = Profiler.begin();
+        drawSidePanel();
+        Profiler.end(Profiler.OVERLAY, phase);
     }
 
     //Screen projections based on camera or window
     public void projectRelativeCameraCoordinates(){
         glMatrixMode(GL_PROJECTION);
         glLoadIdentity(); // Resets any previous projection matrices
-        glOrtho((-windowXOffset * getWidthScalar()) + viewX, viewX + cameraWidth + (windowXOffset * getWidthScalar()), viewY + ((-windowYOffset) * getHeightScalar()), viewY + cameraHeight + ((windowYOffset)* getHeightScalar()), 1, -1);
+        glOrtho(getViewLeft(), getViewRight(), getViewBottom(), getViewTop(), 1, -1);
         glMatrixMode(GL_MODELVIEW);
     }
     public void projectTrueWindowCoordinates(){
@@ -294,6 +946,41 @@ public class Game {
         glMatrixMode(GL_MODELVIEW);
     }
 
+    //Visible world rectangle of the interpolated camera, including the window offsets
+    public double getViewLeft(){
+        return (-windowXOffset * renderCameraWidth / WINDOW_WIDTH) + renderViewX;
+    }
+
+    public double getViewRight(){
+        return renderViewX + renderCameraWidth + (windowXOffset * renderCameraWidth / WINDOW_WIDTH);
+    }
+
+    public double getViewBottom(){
+        return renderViewY + ((-windowYOffset) * renderCameraHeight / WINDOW_HEIGHT);
+    }
+
+    public double getViewTop(){
+        return renderViewY + renderCameraHeight + ((windowYOffset) * renderCameraHeight / WINDOW_HEIGHT);
+    }
+
+    //Convert a glfw cursor coordinate to true window coordinates, clamped to the window
+    public double toWindowX(double cursorX){
+        return Math.min(Math.max(cursorX, windowXOffset), WINDOW_WIDTH + windowXOffset) - windowXOffset;
+    }
+
+    public double toWindowY(double cursorY){
+        return Math.min(Math.max(cursorY, windowYOffset), WINDOW_HEIGHT + windowYOffset) - windowYOffset;
+    }
+
+    //Convert true window coordinates to relative camera coordinates
+    public double toCameraX(double windowX){
+        return getWidthScalar() * windowX + viewX;
+    }
+
+    public double toCameraY(double windowY){
+        return getHeightScalar() * windowY + viewY;
+    }
+
     //Scalars to help calculation
     public double getWidthScalar(){
         return(double) cameraWidth / (double) WINDOW_WIDTH;
@@ -314,29 +1001,27 @@ public class Game {
 
     //Zoom camera in or out
     public void updateZoomLevel(boolean zoomOut){
-        DoubleBuffer xpos = BufferUtils.createDoubleBuffer(3);
-        DoubleBuffer ypos = BufferUtils.createDoubleBuffer(3);
-        glfwGetCursorPos(window, xpos, ypos);
-        //Convert the glfw coordinate to our coordinate system
-        xpos.put(0, Math.min(Math.max(xpos.get(0), windowXOffset), WINDOW_WIDTH + windowXOffset));
-        ypos.put(0, Math.min(Math.max(ypos.get(0), windowYOffset), WINDOW_HEIGHT + windowYOffset));
-        //Relative camera coordinates
-        xpos.put(1, getWidthScalar() * (xpos.get(0) - windowXOffset) + viewX);
-        ypos.put(1, getHeightScalar() * (ypos.get(0) - windowYOffset) + viewY);
+        //around the latest cursor position the callback saw
+        updateZoomLevel(zoomOut, cursorX, cursorY);
+    }
+
+    //Zoom around a glfw cursor position, needs no window so it can run headless
+    public void updateZoomLevel(boolean zoomOut, double cursorX, double cursorY){
         //True window coordinates
-        xpos.put(2, xpos.get(0) - windowXOffset);
-        ypos.put(2, ypos.get(0) - windowYOffset);
+        double windowX = toWindowX(cursorX);
+        double windowY = toWindowY(cursorY);
 
         boolean mouseInFrame = false;
-        double oldX = xpos.get(1);
-        double oldY = ypos.get(1);
+        //Relative camera coordinates
+        double oldX = toCameraX(windowX);
+        double oldY = toCameraY(windowY);
         double xAxisDistance = 0;
         double yAxisDistance = 0;
 
-        if(xpos.get(2) > 0 && xpos.get(2) < gameScreenWidth && ypos.get(2) > 0 && ypos.get(2) < gameScreenHeight){
+        if(windowX > 0 && windowX < gameScreenWidth && windowY > 0 && windowY < gameScreenHeight){
             mouseInFrame = true;
-            xAxisDistance = xpos.get(2)/WINDOW_WIDTH;
-            yAxisDistance = ypos.get(2)/WINDOW_HEIGHT;
+            xAxisDistance = windowX/WINDOW_WIDTH;
+            yAxisDistance = windowY/WINDOW_HEIGHT;
         }
 
         int MIN_WIDTH = 100;
@@ -385,5 +1070,7 @@ public class Game {
                 viewY = oldY - cameraHeight * yAxisDistance;
             }
         }
+        //the zoom is instant, drawing it interpolated would slide the camera for a tick
+        snapCamera();
     }
 }
\ No newline at end of file
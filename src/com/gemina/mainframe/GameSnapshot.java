@@ -0,0 +1,31 @@
+package com.gemina.mainframe;
+
+//Immutable state of one simulation tick, published by the simulation thread and read by the render thread
+public final class GameSnapshot {
+
+    final long tick;
+    //System.nanoTime when the tick finished, the renderer interpolates from it
+    final long time;
+    final double previousViewX;
+    final double previousViewY;
+    final double viewX;
+    final double viewY;
+    final double cameraWidth;
+    final double cameraHeight;
+
+    GameSnapshot(long tick, long time, double previousViewX, double previousViewY, double viewX, double viewY,
+                 double cameraWidth, double cameraHeight){
+        this.tick = tick;
+        this.time = time;
+        this.previousViewX = previousViewX;
+        this.previousViewY = previousViewY;
+        this.viewX = viewX;
+        this.viewY = viewY;
+        this.cameraWidth = cameraWidth;
+        this.cameraHeight = cameraHeight;
+    }
+
+    public long getTick(){
+        return tick;
+    }
+}
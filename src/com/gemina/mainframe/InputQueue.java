@@ -0,0 +1,84 @@
+package com.gemina.mainframe;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+//Fixed size ring of input events in primitive arrays, written by the GLFW callbacks on the main thread
+//and drained once per tick by the simulation thread. Nothing is allocated per event; when the ring is
+//full new events are dropped and counted.
+public class InputQueue {
+
+    public static final int KEY = 0;
+    public static final int MOUSE_BUTTON = 1;
+
+    //receives the drained events, one call per event
+    public interface Handler {
+        void handle(int type, int code, int action, double x, double y);
+    }
+
+    private final int mask;
+    private final int[] types;
+    private final int[] codes;
+    private final int[] actions;
+    private final double[] xs;
+    private final double[] ys;
+
+    //events written and events read, only the main thread moves head and only the simulation thread moves tail
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private long dropped;
+
+    public InputQueue(int capacity){
+        if (Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        mask = capacity - 1;
+        types = new int[capacity];
+        codes = new int[capacity];
+        actions = new int[capacity];
+        xs = new double[capacity];
+        ys = new double[capacity];
+    }
+
+    //Adds an event with the cursor position it happened at, false when the ring is full
+    public boolean push(int type, int code, int action, double x, double y){
+        long h = head.get();
+        if (h - tail.get() > mask) {
+            dropped++;
+            return false;
+        }
+        int slot = (int) h & mask;
+        types[slot] = type;
+        codes[slot] = code;
+        actions[slot] = action;
+        xs[slot] = x;
+        ys[slot] = y;
+        //publishes the slot to the consumer
+        head.lazySet(h + 1);
+        return true;
+    }
+
+    //Hands every event pushed so far to handler in order, returns how many there were
+    public int drain(Handler handler){
+        long t = tail.get();
+        long h = head.get();
+        for (long i = t; i < h; i++) {
+            int slot = (int) i & mask;
+            handler.handle(types[slot], codes[slot], actions[slot], xs[slot], ys[slot]);
+        }
+        //frees the slots for the producer
+        tail.lazySet(h);
+        return (int) (h - t);
+    }
+
+    public int size(){
+        return (int) (head.get() - tail.get());
+    }
+
+    public int getCapacity(){
+        return mask + 1;
+    }
+
+    //Events lost to a full ring, read on the main thread
+    public long getDropped(){
+        return dropped;
+    }
+}
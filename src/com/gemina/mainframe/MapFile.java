@@ -0,0 +1,182 @@
+package com.gemina.mainframe;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+//Binary map format, little endian:
+//  header      magic "GMAP", version, texture pack, width, height, chunk size      6 ints
+//  chunk table offset and length of every chunk payload, row by row of chunks     long + int each
+//  payloads    encoding byte, then the chunk's ids row by row, either raw or as (run length - 1, id) byte pairs
+//Opening maps the file read only, chunks are decoded on demand by the TerrainGrid it returns.
+public class MapFile {
+
+    static final int MAGIC = 0x50414d47;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 6 * Integer.BYTES;
+    static final int TABLE_ENTRY_BYTES = Long.BYTES + Integer.BYTES;
+    static final byte RAW = 0;
+    static final byte RUN_LENGTH = 1;
+
+    private final MappedByteBuffer data;
+    private final int texturePack;
+    private final int width;
+    private final int height;
+    private final int chunkSize;
+    private final int chunksX;
+    private final int chunksY;
+
+    private MapFile(MappedByteBuffer data){
+        this.data = data;
+        data.order(ByteOrder.LITTLE_ENDIAN);
+        if (data.getInt(0) != MAGIC)
+            throw new IllegalArgumentException("Not a map file");
+        if (data.getInt(4) != VERSION)
+            throw new IllegalArgumentException("Unsupported map file version " + data.getInt(4));
+        texturePack = data.getInt(8);
+        width = data.getInt(12);
+        height = data.getInt(16);
+        chunkSize = data.getInt(20);
+        chunksX = (width + chunkSize - 1) / chunkSize;
+        chunksY = (height + chunkSize - 1) / chunkSize;
+    }
+
+    //Maps a map file, no terrain is decoded until the returned grid's tiles are read
+    public static MapFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            //the mapping stays valid after the channel is closed
+            return new MapFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    //A new lazily decoded grid over this file
+    public TerrainGrid createTerrain(){
+        return new TerrainGrid(this);
+    }
+
+    public int getTexturePack(){
+        return texturePack;
+    }
+
+    public int getWidth(){
+        return width;
+    }
+
+    public int getHeight(){
+        return height;
+    }
+
+    public int getChunkCount(){
+        return chunksX * chunksY;
+    }
+
+    public int getChunkIndex(int x, int y){
+        return x / chunkSize + (y / chunkSize) * chunksX;
+    }
+
+    //Decodes one chunk payload into a row by row id array, only reading the mapping with absolute gets
+    void decodeChunk(int chunk, byte[] ids){
+        int entry = HEADER_BYTES + chunk * TABLE_ENTRY_BYTES;
+        int offset = (int) data.getLong(entry);
+        int length = data.getInt(entry + Long.BYTES);
+        int startX = (chunk % chunksX) * chunkSize;
+        int startY = (chunk / chunksX) * chunkSize;
+        int endX = Math.min(width, startX + chunkSize);
+        int endY = Math.min(height, startY + chunkSize);
+
+        byte encoding = data.get(offset);
+        int read = offset + 1;
+        int end = offset + length;
+        int run = 0;
+        byte id = 0;
+        for (int y = startY; y < endY; y++) {
+            int row = y * width;
+            for (int x = startX; x < endX; x++) {
+                if (encoding == RAW) {
+                    ids[row + x] = checkId(chunk, data.get(read++));
+                    continue;
+                }
+                if (run == 0) {
+                    if (read >= end)
+                        throw new IllegalStateException("Chunk " + chunk + " is truncated");
+                    run = (data.get(read) & 0xFF) + 1;
+                    id = checkId(chunk, data.get(read + 1));
+                    read += 2;
+                }
+                ids[row + x] = id;
+                run--;
+            }
+        }
+    }
+
+    //Ids index the rules tables, an unknown one would only fail later deep in the simulation
+    private static byte checkId(int chunk, byte id){
+        if (id < 0 || id >= Tile.ID_COUNT)
+            throw new IllegalArgumentException("Chunk " + chunk + " has unknown tile id " + (id & 0xFF));
+        return id;
+    }
+
+    //Writes a terrain grid to a file, each chunk run length encoded unless raw is smaller
+    public static void save(Path path, TerrainGrid terrain, int texturePack) throws IOException {
+        int chunkSize = ChunkGrid.CHUNK_SIZE;
+        ChunkGrid chunks = new ChunkGrid(terrain.getWidth(), terrain.getHeight());
+        int chunkCount = chunks.getChunkCount();
+        byte[] ids = terrain.getIds();
+
+        //worst case per chunk: the encoding byte and one pair per tile
+        ByteBuffer payload = ByteBuffer.allocate(1 + chunkSize * chunkSize * 2);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES + chunkCount * TABLE_ENTRY_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(texturePack)
+                .putInt(terrain.getWidth()).putInt(terrain.getHeight()).putInt(chunkSize);
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            long offset = header.capacity();
+            for (int chunk = 0; chunk < chunkCount; chunk++) {
+                int cx = chunk % chunks.getChunksX();
+                int cy = chunk / chunks.getChunksX();
+                encodeChunk(ids, terrain.getWidth(), chunks.getTileStartX(cx), chunks.getTileStartY(cy),
+                        chunks.getTileEndX(cx), chunks.getTileEndY(cy), payload);
+                header.putLong(offset).putInt(payload.remaining());
+                offset += payload.remaining();
+                channel.write(payload, offset - payload.remaining());
+            }
+            header.flip();
+            channel.write(header, 0);
+        }
+    }
+
+    private static void encodeChunk(byte[] ids, int width, int startX, int startY, int endX, int endY, ByteBuffer out){
+        out.clear();
+        out.put(RUN_LENGTH);
+        int run = 0;
+        byte current = 0;
+        for (int y = startY; y < endY; y++) {
+            for (int x = startX; x < endX; x++) {
+                byte id = ids[x + y * width];
+                if (run > 0 && (id != current || run == 256)) {
+                    out.put((byte) (run - 1)).put(current);
+                    run = 0;
+                }
+                current = id;
+                run++;
+            }
+        }
+        if (run > 0) {
+            out.put((byte) (run - 1)).put(current);
+        }
+        int tiles = (endX - startX) * (endY - startY);
+        if (out.position() > 1 + tiles) {
+            out.clear();
+            out.put(RAW);
+            for (int y = startY; y < endY; y++) {
+                out.put(ids, startX + y * width, endX - startX);
+            }
+        }
+        out.flip();
+    }
+}
@@ -0,0 +1,440 @@
+package com.gemina.mainframe;
+
+import com.gemina.pathfinding.DistanceFields;
+import com.gemina.pathfinding.PathFinder;
+import com.gemina.units.SpatialHash;
+import com.gemina.units.UnitStore;
+
+import java.util.Arrays;
+
+//Rules of one red against blue game on a terrain grid, without any rendering or input so it runs
+//headless. Every TURN_TICKS ticks a turn is played: towers spawn units, automated owners move their
+//units toward the closest capture point they do not hold, ordered units walk to their target instead,
+//adjacent enemies fight, and units standing alone on a capture point take it. An owner without towers
+//and units has lost.
+//Given the same terrain every match plays out the same way, there is no randomness in the rules.
+public class Match {
+
+    public static final int TURN_TICKS = 30;
+    public static final int MOVEMENT = 4;
+    public static final int UNIT_HP = 10;
+    //towers spawn a unit every few turns
+    public static final int SPAWN_TURNS = 5;
+    //after this many turns the owner with more towers wins
+    public static final int MAX_TURNS = 400;
+    //winner of a match nobody won
+    public static final int DRAW = UnitStore.NEUTRAL;
+
+    private final TerrainGrid terrain;
+    private final UnitStore units;
+    private final SpatialHash spatialHash;
+    private final DistanceFields fields;
+    private final int width;
+    private final int height;
+    //tile index of every capture point, they change owner but never disappear
+    private final int[] capturePoints;
+    private final boolean[] automated = new boolean[UnitStore.OWNERS];
+
+    private long tick;
+    private int turn;
+    private int winner = -1;
+
+    private final int tiles;
+    //damage taken this turn per slot, reused by every turn
+    private int[] damage = new int[64];
+    //units per owner on every tile that has any, refilled by countUnits
+    private final TileCounts unitsOnTile = new TileCounts();
+    //target tile index of every handle's move order, -1 without one
+    private int[] orders = new int[64];
+    private int[] path;
+    private PathFinder pathFinder;
+
+    public Match(TerrainGrid terrain){
+        this.terrain = terrain;
+        width = terrain.getWidth();
+        height = terrain.getHeight();
+        tiles = width * height;
+        placeBases();
+        byte[] ids = terrain.getIds();
+        int count = 0;
+        for (byte id : ids) {
+            if (Tile.isCapturePoint(id)) {
+                count++;
+            }
+        }
+        capturePoints = new int[count];
+        count = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (Tile.isCapturePoint(ids[i])) {
+                capturePoints[count++] = i;
+            }
+        }
+        fields = new DistanceFields(terrain);
+        units = new UnitStore(1024);
+        spatialHash = new SpatialHash(width * Tile.getWidth(), height * Tile.getHeight(), Tile.getWidth());
+        units.setSpatialHash(spatialHash);
+        spawnAtTowers();
+    }
+
+    //Match on a freshly generated map
+    public static Match generate(int width, int height, long seed){
+        return new Match(new MapGenerator(seed).generate(width, height));
+    }
+
+    //Red starts on the capture point closest to the middle of the left quarter, blue on the right quarter,
+    //unless the map already has towers of both
+    private void placeBases(){
+        if (findTower(Tile.RED_TOWER) < 0) {
+            placeBase(Tile.RED_TOWER, width / 4, height / 2);
+        }
+        if (findTower(Tile.BLUE_TOWER) < 0) {
+            placeBase(Tile.BLUE_TOWER, width - 1 - width / 4, height / 2);
+        }
+    }
+
+    private int findTower(int id){
+        byte[] ids = terrain.getIds();
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] == id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void placeBase(int towerId, int x, int y){
+        byte[] ids = terrain.getIds();
+        int best = -1;
+        int bestDistance = Integer.MAX_VALUE;
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] == Tile.NEUTRAL_TOWER) {
+                int distance = Math.abs(i % width - x) + Math.abs(i / width - y);
+                if (distance < bestDistance) {
+                    best = i;
+                    bestDistance = distance;
+                }
+            }
+        }
+        if (best < 0) {
+            best = x + y * width;
+        }
+        terrain.setId(best % width, best / width, towerId);
+    }
+
+    public void setAutomated(int owner, boolean value){
+        automated[owner] = value;
+    }
+
+    public boolean isAutomated(int owner){
+        return automated[owner];
+    }
+
+    //Adds a unit centered on a tile and returns its handle
+    public int spawnUnit(int tileX, int tileY, int owner){
+        float x = (tileX + 0.5f) * Tile.getWidth();
+        float y = (tileY + 0.5f) * Tile.getHeight();
+        int handle = units.add(x, y, owner, 0, UNIT_HP, MOVEMENT);
+        if (handle >= orders.length) {
+            orders = Arrays.copyOf(orders, Math.max(handle + 1, orders.length * 2));
+        }
+        orders[handle] = -1;
+        return handle;
+    }
+
+    //Sends a unit of owner to a tile, ignored for units of other owners so a peer can only order its own
+    public void order(int owner, int handle, int tileX, int tileY){
+        if (units.isAlive(handle) && units.getOwner(handle) == owner && terrain.contains(tileX, tileY)) {
+            orders[handle] = tileX + tileY * width;
+        }
+    }
+
+    public void cancelOrder(int owner, int handle){
+        if (units.isAlive(handle) && units.getOwner(handle) == owner) {
+            orders[handle] = -1;
+        }
+    }
+
+    //Target tile of a unit's order, -1 without one
+    public int getOrder(int handle){
+        return orders[handle];
+    }
+
+    //Advances by one tick, every TURN_TICKS ticks plays a turn
+    public void tick(){
+        tick++;
+        if (tick % TURN_TICKS == 0 && !isOver()) {
+            playTurn();
+        }
+    }
+
+    //Ticks until somebody won or the turn limit is reached
+    public void finish(){
+        while (!isOver()) {
+            tick();
+        }
+    }
+
+    private void playTurn(){
+        turn++;
+        if (turn % SPAWN_TURNS == 0) {
+            spawnAtTowers();
+        }
+        moveUnits();
+        fight();
+        capture();
+        checkVictory();
+    }
+
+    //Towers spawn onto their own tile only while it is empty, which bounds the unit count by the towers held
+    private void spawnAtTowers(){
+        byte[] ids = terrain.getIds();
+        for (int index : capturePoints) {
+            int owner = Tile.getOwner(ids[index]);
+            float x = (index % width + 0.5f) * Tile.getWidth();
+            float y = (index / width + 0.5f) * Tile.getHeight();
+            if (owner != UnitStore.NEUTRAL && spatialHash.queryPoint(x, y, 1) < 0) {
+                spawnUnit(index % width, index / width, owner);
+            }
+        }
+    }
+
+    private int tileIndex(float x, float y){
+        int tileX = Math.min(Math.max((int) (x / Tile.getWidth()), 0), width - 1);
+        int tileY = Math.min(Math.max((int) (y / Tile.getHeight()), 0), height - 1);
+        return tileX + tileY * width;
+    }
+
+    //Ordered units walk their route, every other unit of an automated owner follows the distance field of
+    //whichever other owner's capture point is closest
+    private void moveUnits(){
+        byte[] ids = terrain.getIds();
+        for (int slot = 0; slot < units.size(); slot++) {
+            int owner = units.getOwners()[slot];
+            int handle = units.getHandle(slot);
+            int start = tileIndex(units.getXs()[slot], units.getYs()[slot]);
+            int index = start;
+            int movement = MOVEMENT;
+            if (orders[handle] >= 0) {
+                index = followOrder(handle, start);
+                movement = 0;
+            }
+            while (orders[handle] < 0 && automated[owner]) {
+                int target = -1;
+                int best = DistanceFields.UNREACHABLE;
+                for (int other = 0; other < UnitStore.OWNERS; other++) {
+                    if (other != owner && fields.getDistance(other, index) < best) {
+                        best = fields.getDistance(other, index);
+                        target = other;
+                    }
+                }
+                if (target < 0 || best == 0) {
+                    break;
+                }
+                int next = fields.getNextStep(target, index);
+                if (next < 0) {
+                    break;
+                }
+                int cost = Tile.getMovement(ids[next]);
+                if (cost > movement) {
+                    break;
+                }
+                movement -= cost;
+                index = next;
+            }
+            units.setMovementLeft(handle, movement);
+            if (index != start) {
+                units.setPosition(handle, (index % width + 0.5f) * Tile.getWidth(), (index / width + 0.5f) * Tile.getHeight());
+            }
+        }
+    }
+
+    //Fills unitsOnTile with the units per owner on every tile that has any
+    private void countUnits(){
+        float[] xs = units.getXs();
+        float[] ys = units.getYs();
+        byte[] owners = units.getOwners();
+        unitsOnTile.reset(units.size());
+        for (int slot = 0; slot < units.size(); slot++) {
+            unitsOnTile.add(tileIndex(xs[slot], ys[slot]), owners[slot]);
+        }
+    }
+
+    //Moves along the cheapest route to the order's target as far as the movement allows, returns the tile
+    //reached. The order ends on arrival or when the target can no longer be reached
+    private int followOrder(int handle, int start){
+        int target = orders[handle];
+        if (pathFinder == null) {
+            pathFinder = new PathFinder(terrain);
+            path = new int[tiles];
+        }
+        if (target == start || pathFinder.findPath(start % width, start / width, target % width, target / width) < 0) {
+            orders[handle] = -1;
+            return start;
+        }
+        int length = pathFinder.getPath(path);
+        byte[] ids = terrain.getIds();
+        int movement = MOVEMENT;
+        int index = start;
+        for (int i = 1; i < length && Tile.getMovement(ids[path[i]]) <= movement; i++) {
+            movement -= Tile.getMovement(ids[path[i]]);
+            index = path[i];
+        }
+        if (index == target) {
+            orders[handle] = -1;
+        }
+        return index;
+    }
+
+    //Every unit hits each enemy on its own or one of the eight neighbouring tiles for one point, all at the
+    //same time. Damage is read from the per tile counts, so stacked units cost nothing extra
+    private void fight(){
+        int size = units.size();
+        if (damage.length < size) {
+            damage = new int[Math.max(size, damage.length * 2)];
+        }
+        float[] xs = units.getXs();
+        float[] ys = units.getYs();
+        byte[] owners = units.getOwners();
+        countUnits();
+        for (int slot = 0; slot < size; slot++) {
+            int index = tileIndex(xs[slot], ys[slot]);
+            int tileX = index % width;
+            int tileY = index / width;
+            int hits = 0;
+            for (int y = Math.max(tileY - 1, 0); y <= Math.min(tileY + 1, height - 1); y++) {
+                for (int x = Math.max(tileX - 1, 0); x <= Math.min(tileX + 1, width - 1); x++) {
+                    for (int other = 0; other < UnitStore.OWNERS; other++) {
+                        if (other != owners[slot]) {
+                            hits += unitsOnTile.get(x + y * width, other);
+                        }
+                    }
+                }
+            }
+            damage[slot] = hits;
+        }
+        //removing swaps the last slot in, so walk backwards to visit every slot once
+        for (int slot = size - 1; slot >= 0; slot--) {
+            if (damage[slot] == 0) {
+                continue;
+            }
+            int handle = units.getHandle(slot);
+            int hp = units.getHps()[slot] - damage[slot];
+            if (hp <= 0) {
+                units.remove(handle);
+            } else {
+                units.setHp(handle, hp);
+            }
+        }
+    }
+
+    //A unit without enemies on its tile takes the capture point it stands on
+    private void capture(){
+        byte[] ids = terrain.getIds();
+        countUnits();
+        for (int slot = 0; slot < units.size(); slot++) {
+            int owner = units.getOwners()[slot];
+            int index = tileIndex(units.getXs()[slot], units.getYs()[slot]);
+            if (!Tile.isCapturePoint(ids[index]) || Tile.getOwner(ids[index]) == owner) {
+                continue;
+            }
+            boolean contested = false;
+            for (int other = 0; other < UnitStore.OWNERS; other++) {
+                if (other != owner && unitsOnTile.get(index, other) > 0) {
+                    contested = true;
+                }
+            }
+            if (!contested) {
+                terrain.setId(index % width, index / width, Tile.getTowerId(owner));
+            }
+        }
+    }
+
+    private void checkVictory(){
+        int[] unitCount = new int[UnitStore.OWNERS];
+        byte[] owners = units.getOwners();
+        for (int slot = 0; slot < units.size(); slot++) {
+            unitCount[owners[slot]]++;
+        }
+        boolean redAlive = unitCount[UnitStore.RED] > 0 || countTowers(UnitStore.RED) > 0;
+        boolean blueAlive = unitCount[UnitStore.BLUE] > 0 || countTowers(UnitStore.BLUE) > 0;
+        if (!redAlive || !blueAlive) {
+            winner = redAlive ? UnitStore.RED : blueAlive ? UnitStore.BLUE : DRAW;
+        } else if (turn >= MAX_TURNS) {
+            int red = countTowers(UnitStore.RED);
+            int blue = countTowers(UnitStore.BLUE);
+            winner = red > blue ? UnitStore.RED : blue > red ? UnitStore.BLUE : DRAW;
+        }
+    }
+
+    public int countTowers(int owner){
+        byte[] ids = terrain.getIds();
+        int count = 0;
+        for (int index : capturePoints) {
+            if (Tile.getOwner(ids[index]) == owner) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    //Hash of everything the rules depend on: tick, units in slot order and the owner of every capture point.
+    //Peers in lockstep compare it to notice a diverged simulation
+    public int checksum(){
+        long hash = 0xcbf29ce484222325L;
+        hash = mix(hash, tick);
+        hash = mix(hash, units.size());
+        float[] xs = units.getXs();
+        float[] ys = units.getYs();
+        byte[] owners = units.getOwners();
+        int[] hps = units.getHps();
+        for (int slot = 0; slot < units.size(); slot++) {
+            hash = mix(hash, Float.floatToIntBits(xs[slot]));
+            hash = mix(hash, Float.floatToIntBits(ys[slot]));
+            hash = mix(hash, owners[slot] | hps[slot] << 8);
+            hash = mix(hash, orders[units.getHandle(slot)]);
+        }
+        byte[] ids = terrain.getIds();
+        for (int index : capturePoints) {
+            hash = mix(hash, ids[index]);
+        }
+        return (int) (hash ^ hash >>> 32);
+    }
+
+    private static long mix(long hash, long value){
+        hash = (hash ^ value) * 0x100000001b3L;
+        return hash ^ hash >>> 29;
+    }
+
+    public boolean isOver(){
+        return winner >= 0;
+    }
+
+    //RED, BLUE or DRAW once the match is over, -1 before
+    public int getWinner(){
+        return winner;
+    }
+
+    public long getTick(){
+        return tick;
+    }
+
+    public int getTurn(){
+        return turn;
+    }
+
+    public TerrainGrid getTerrain(){
+        return terrain;
+    }
+
+    public UnitStore getUnits(){
+        return units;
+    }
+
+    public SpatialHash getSpatialHash(){
+        return spatialHash;
+    }
+
+    public DistanceFields getFields(){
+        return fields;
+    }
+}
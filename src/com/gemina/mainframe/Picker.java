@@ -0,0 +1,66 @@
+package com.gemina.mainframe;
+
+import com.gemina.units.SpatialHash;
+
+//Answers "what is under the cursor" for a game's camera. Tiles are found by dividing world coordinates
+//by the tile size, units through the spatial hash, so neither depends on the map or unit count.
+//Uses the simulation camera, call it from the simulation thread.
+public class Picker {
+
+    //how far from the cursor a unit still counts as hovered, in world units
+    public static final double UNIT_PICK_RADIUS = 24;
+
+    private final Game game;
+
+    public Picker(Game game){
+        this.game = game;
+    }
+
+    //False for cursor positions over the side panel or outside the window
+    public boolean isOverMap(double cursorX, double cursorY){
+        double windowX = cursorX - game.windowXOffset;
+        double windowY = cursorY - game.windowYOffset;
+        return windowX >= 0 && windowY >= 0 && windowX < game.gameScreenWidth && windowY < game.gameScreenHeight;
+    }
+
+    public double toWorldX(double cursorX){
+        return game.toCameraX(game.toWindowX(cursorX));
+    }
+
+    //The world is drawn y up from the bottom of the game screen, window y grows downwards from its top
+    public double toWorldY(double cursorY){
+        return game.viewY + (game.gameScreenHeight - game.toWindowY(cursorY)) * game.getHeightScalar();
+    }
+
+    public int toTileX(double worldX){
+        return (int) Math.floor(worldX / Tile.tileWidth);
+    }
+
+    public int toTileY(double worldY){
+        return (int) Math.floor(worldY / Tile.tileHeight);
+    }
+
+    //Terrain index of the tile under a glfw cursor position, -1 when there is none
+    public int pickTile(double cursorX, double cursorY){
+        if (!isOverMap(cursorX, cursorY)) {
+            return -1;
+        }
+        int x = toTileX(toWorldX(cursorX));
+        int y = toTileY(toWorldY(cursorY));
+        TerrainGrid terrain = game.terrain;
+        return terrain.contains(x, y) ? terrain.index(x, y) : -1;
+    }
+
+    //Handle of the unit closest to the cursor within UNIT_PICK_RADIUS, -1 when there is none
+    public int pickUnit(double cursorX, double cursorY, SpatialHash units){
+        if (!isOverMap(cursorX, cursorY)) {
+            return -1;
+        }
+        return units.queryPoint(toWorldX(cursorX), toWorldY(cursorY), UNIT_PICK_RADIUS);
+    }
+
+    //Units inside the box between two cursor positions, returns the count, read them from units.getResult
+    public int selectUnits(double cursorX1, double cursorY1, double cursorX2, double cursorY2, SpatialHash units){
+        return units.queryRect(toWorldX(cursorX1), toWorldY(cursorY1), toWorldX(cursorX2), toWorldY(cursorY2));
+    }
+}
@@ -0,0 +1,58 @@
+package com.gemina.mainframe;
+
+import com.gemina.profiling.Profiler;
+
+import java.util.concurrent.locks.LockSupport;
+
+//Runs Game.tick at the fixed tick rate on its own thread and publishes a snapshot after every tick,
+//so a slow tick delays the next snapshot instead of a frame
+public class Simulation implements Runnable {
+
+    final Game game;
+    private volatile boolean running;
+    private Thread thread;
+
+    public Simulation(Game game){
+        this.game = game;
+    }
+
+    public void start(){
+        running = true;
+        thread = new Thread(this, "simulation");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop(){
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run(){
+        long nextTick = System.nanoTime();
+        while (running) {
+            long tickLength = 1_000_000_000L / game.tickRate;
+            //after a stall the simulation catches up at most MAX_FRAME_TIME worth of ticks
+            long maxBehind = (long) (game.MAX_FRAME_TIME * 1e9);
+            long now = System.nanoTime();
+            if (now - nextTick > maxBehind) {
+                nextTick = now - maxBehind;
+            }
+            while (running && now - nextTick >= 0) {
+                long start = Profiler.beginTick();
+                game.tick();
+                game.publishSnapshot();
+                Profiler.endTick(start, game.tickCount);
+                nextTick += tickLength;
+                now = System.nanoTime();
+            }
+            LockSupport.parkNanos(nextTick - now);
+        }
+    }
+}
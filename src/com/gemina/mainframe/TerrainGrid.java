@@ -0,0 +1,145 @@
+package com.gemina.mainframe;
+
+import java.util.ArrayList;
+import java.util.List;
+
+//Terrain of the whole map, one byte per tile id stored row by row at x + y * width.
+//A grid opened from a map file starts empty and decodes each chunk the first time one of its tiles is read.
+public class TerrainGrid {
+
+    final int width;
+    final int height;
+    final byte[] ids;
+
+    //notified when an id changes, e.g. to rebuild chunk meshes or distance fields
+    List<TerrainListener> listeners = new ArrayList<>();
+
+    //lazily decoded chunks, source is dropped once every chunk is in ids
+    MapFile source;
+    boolean[] loaded;
+    int unloaded;
+
+    public TerrainGrid(int width, int height){
+        this.width = width;
+        this.height = height;
+        ids = new byte[width * height];
+    }
+
+    //Grid whose chunks are decoded from a map file on first access
+    TerrainGrid(MapFile source){
+        this(source.getWidth(), source.getHeight());
+        this.source = source;
+        loaded = new boolean[source.getChunkCount()];
+        unloaded = loaded.length;
+    }
+
+    //Copy with its own ids, chunks not decoded yet stay lazy in the copy too
+    public TerrainGrid copy(){
+        TerrainGrid copy = new TerrainGrid(width, height);
+        System.arraycopy(ids, 0, copy.ids, 0, ids.length);
+        if (source != null) {
+            copy.source = source;
+            copy.loaded = loaded.clone();
+            copy.unloaded = unloaded;
+        }
+        return copy;
+    }
+
+    //Decodes the chunk holding a tile if that has not happened yet
+    public void ensureLoaded(int x, int y){
+        if (source != null) {
+            int chunk = source.getChunkIndex(x, y);
+            if (!loaded[chunk]) {
+                source.decodeChunk(chunk, ids);
+                loaded[chunk] = true;
+                if (--unloaded == 0) {
+                    source = null;
+                }
+            }
+        }
+    }
+
+    public void loadAll(){
+        if (source != null) {
+            for (int chunk = 0; chunk < loaded.length; chunk++) {
+                if (!loaded[chunk]) {
+                    source.decodeChunk(chunk, ids);
+                }
+            }
+            source = null;
+        }
+    }
+
+    public boolean isLoaded(){
+        return source == null;
+    }
+
+    public int getWidth(){
+        return width;
+    }
+
+    public int getHeight(){
+        return height;
+    }
+
+    public int index(int x, int y){
+        return x + y * width;
+    }
+
+    public boolean contains(int x, int y){
+        return x >= 0 && y >= 0 && x < width && y < height;
+    }
+
+    public int getId(int x, int y){
+        if (source != null) {
+            ensureLoaded(x, y);
+        }
+        return ids[x + y * width];
+    }
+
+    public int getId(int index){
+        if (source != null) {
+            ensureLoaded(index % width, index / width);
+        }
+        return ids[index];
+    }
+
+    public void setId(int x, int y, int id){
+        ensureLoaded(x, y);
+        int index = x + y * width;
+        int oldId = ids[index];
+        if (oldId != id) {
+            ids[index] = (byte) id;
+            for (int i = 0; i < listeners.size(); i++) {
+                listeners.get(i).tileChanged(x, y, oldId, id);
+            }
+        }
+    }
+
+    public void addListener(TerrainListener listener){
+        listeners.add(listener);
+    }
+
+    public void removeListener(TerrainListener listener){
+        listeners.remove(listener);
+    }
+
+    public int getMovement(int x, int y){
+        return Tile.getMovement(getId(x, y));
+    }
+
+    public boolean isCapturePoint(int x, int y){
+        return Tile.isCapturePoint(getId(x, y));
+    }
+
+    //Lightweight view of one cell, the grid stays the only copy of the data
+    public Tile getTile(int x, int y){
+        return new Tile(this, x, y);
+    }
+
+    //Raw ids for sequential scans, decodes the whole map first. Writing to it bypasses the listeners
+    public byte[] getIds(){
+        loadAll();
+        return ids;
+    }
+}
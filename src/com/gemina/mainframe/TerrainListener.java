@@ -0,0 +1,7 @@
+package com.gemina.mainframe;
+
+//Notified by a TerrainGrid after the id of a tile changed
+public interface TerrainListener {
+
+    void tileChanged(int x, int y, int oldId, int newId);
+}
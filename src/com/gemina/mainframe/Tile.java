@@ -1,41 +1,35 @@
 package com.gemina.mainframe;
 
-import com.gemina.rendering.Texture;
-
+//Rules of the terrain: what each tile id costs to enter, blocks and who holds it. Free of any rendering
+//so matches can be simulated without a GL context.
 public class Tile {
 
     static int tileWidth = 64;
     static int tileHeight = 64;
 
-    //texture pack 1
-    final static Texture tex1 = new Texture("road.png");
-    final static Texture tex2 = new Texture("grass.png");
-    final static Texture tex3 = new Texture("tree.png");
-    final static Texture tex4 = new Texture("tower_neutral.png");
-    final static Texture tex5 = new Texture("tower_red.png");
-    final static Texture tex6 = new Texture("tower_blue.png");
-    //texture pack 2
-    final static Texture tex11 = new Texture("road.png");
-    final static Texture tex12 = new Texture("forest.png");
-    final static Texture tex13 = new Texture("rock.png");
-    final static Texture tex14 = new Texture("tower_neutral.png");
-    final static Texture tex15 = new Texture("tower_red.png");
-    final static Texture tex16 = new Texture("tower_blue.png");
-
-    double[] vertices = new double[8];
-
-    int id;
+    //tile ids, images are chosen per texture pack by the renderer
+    public static final int ROAD = 1;
+    public static final int GRASS = 2;
+    public static final int TREE = 3;
+    public static final int NEUTRAL_TOWER = 4;
+    public static final int RED_TOWER = 5;
+    public static final int BLUE_TOWER = 6;
+    //ids 0 (nothing) to ID_COUNT - 1 are known, tables indexed by id have ID_COUNT entries
+    public static final int ID_COUNT = 7;
+
+    //a tile is a view over one cell of the terrain grid, it holds no terrain data itself
+    TerrainGrid grid;
     int x_pos;
     int y_pos;
 
-    public Tile(int newid, int newx, int newy){
-        id = newid;
+    public Tile(TerrainGrid newgrid, int newx, int newy){
+        grid = newgrid;
         x_pos = newx;
         y_pos = newy;
-        setVertices();
     }
 
-    public void setVertices(){
+    //Writes the corners of the tile in Model order into vertices and returns it
+    public double[] getVertices(double[] vertices){
         vertices[0] = tileWidth * x_pos;
         vertices[1] = tileHeight * y_pos;
         vertices[2] = tileWidth * x_pos;
@@ -44,56 +38,18 @@ public class Tile {
         vertices[5] = tileHeight * y_pos;
         vertices[6] = tileWidth * x_pos + tileWidth;
         vertices[7] = tileHeight * y_pos + tileHeight;
+        return vertices;
     }
 
-    public void setTexture(int pack){
-        if(pack == 1) {
-            switch (id) {
-                case 1:
-                    tex1.bind();
-                    break;
-                case 2:
-                    tex2.bind();
-                    break;
-                case 3:
-                    tex3.bind();
-                    break;
-                case 4:
-                    tex4.bind();
-                    break;
-                case 5:
-                    tex5.bind();
-                    break;
-                case 6:
-                    tex6.bind();
-                    break;
-            }
-        }
-        else if(pack == 2) {
-            switch (id) {
-                case 1:
-                    tex11.bind();
-                    break;
-                case 2:
-                    tex12.bind();
-                    break;
-                case 3:
-                    tex13.bind();
-                    break;
-                case 4:
-                    tex14.bind();
-                    break;
-                case 5:
-                    tex15.bind();
-                    break;
-                case 6:
-                    tex16.bind();
-                    break;
-            }
-        }
+    public double[] getVertices(){
+        return getVertices(new double[8]);
     }
 
     public int getMovement(){
+        return getMovement(getId());
+    }
+
+    public static int getMovement(int id){
         switch (id) {
             case 1:
                 return 4;
@@ -115,22 +71,45 @@ public class Tile {
     }
 
     public void setId(int newid) {
-        id = newid;
+        grid.setId(x_pos, y_pos, newid);
     }
 
     public int getId(){
-        return id;
+        return grid.getId(x_pos, y_pos);
     }
 
-    public double[] getVertices(){
-        return vertices;
+    public int getX(){
+        return x_pos;
+    }
+
+    public int getY(){
+        return y_pos;
     }
 
     public boolean isCapturePoint() {
+        return isCapturePoint(getId());
+    }
+
+    //Trees and rocks hide what is behind them
+    public static boolean blocksSight(int id) {
+        return id == 3;
+    }
+
+    public static boolean isCapturePoint(int id) {
         if(id == 4 || id == 5 || id == 6) {
             return true;
         }
         return false;
     }
 
+    //Owner holding a capture point id, -1 for other ids
+    public static int getOwner(int id) {
+        return isCapturePoint(id) ? id - NEUTRAL_TOWER : -1;
+    }
+
+    //Capture point id of an owner
+    public static int getTowerId(int owner) {
+        return NEUTRAL_TOWER + owner;
+    }
+
 }
@@ -0,0 +1,59 @@
+package com.gemina.mainframe;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+//Records tile changes made by the simulation and hands them to the render thread in per tick batches,
+//so the renderer can keep its own copy of the terrain without ever reading the simulation's
+public class TileChangeLog implements TerrainListener {
+
+    //index and new id of every change of one tick
+    static final class Batch {
+        final long tick;
+        final int[] changes;
+
+        Batch(long tick, int[] changes){
+            this.tick = tick;
+            this.changes = changes;
+        }
+    }
+
+    private final ConcurrentLinkedQueue<Batch> published = new ConcurrentLinkedQueue<>();
+    //simulation thread only
+    private int[] pending = new int[64];
+    private int pendingCount;
+    private final int width;
+
+    public TileChangeLog(int width){
+        this.width = width;
+    }
+
+    @Override
+    public void tileChanged(int x, int y, int oldId, int newId){
+        if (pendingCount + 2 > pending.length) {
+            pending = Arrays.copyOf(pending, pending.length * 2);
+        }
+        pending[pendingCount++] = x + y * width;
+        pending[pendingCount++] = newId;
+    }
+
+    //Publishes the changes recorded since the last call, called by the simulation after each tick
+    public void publish(long tick){
+        if (pendingCount > 0) {
+            published.add(new Batch(tick, Arrays.copyOf(pending, pendingCount)));
+            pendingCount = 0;
+        }
+    }
+
+    //Applies every published change up to a tick to the render thread's terrain
+    public void apply(TerrainGrid terrain, long tick){
+        Batch batch;
+        while ((batch = published.peek()) != null && batch.tick <= tick) {
+            published.poll();
+            int[] changes = batch.changes;
+            for (int i = 0; i < changes.length; i += 2) {
+                terrain.setId(changes[i] % terrain.width, changes[i] / terrain.width, changes[i + 1]);
+            }
+        }
+    }
+}
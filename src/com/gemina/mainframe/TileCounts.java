@@ -0,0 +1,58 @@
+package com.gemina.mainframe;
+
+import java.util.Arrays;
+
+import com.gemina.units.UnitStore;
+
+//Units per owner on the tiles that have any, in an open addressed hash table sized by the unit count
+//instead of the map, so a large map with few units stays small. Stacked units share one entry.
+class TileCounts {
+
+    private static final int EMPTY = -1;
+
+    //tile index * OWNERS + owner, EMPTY for free entries
+    private int[] keys = new int[0];
+    private int[] counts = new int[0];
+    private int shift;
+
+    //Empties the table and makes room for units entries, so adding never has to grow it
+    void reset(int units){
+        int capacity = 16;
+        while (capacity < units * 2) {
+            capacity <<= 1;
+        }
+        if (keys.length < capacity) {
+            keys = new int[capacity];
+            counts = new int[capacity];
+            shift = 32 - Integer.numberOfTrailingZeros(capacity);
+        }
+        Arrays.fill(keys, EMPTY);
+    }
+
+    //Counts one more unit of an owner on a tile
+    void add(int tile, int owner){
+        int key = tile * UnitStore.OWNERS + owner;
+        int i = find(key);
+        if (keys[i] == EMPTY) {
+            keys[i] = key;
+            counts[i] = 0;
+        }
+        counts[i]++;
+    }
+
+    //Units of an owner on a tile
+    int get(int tile, int owner){
+        int i = find(tile * UnitStore.OWNERS + owner);
+        return keys[i] == EMPTY ? 0 : counts[i];
+    }
+
+    //Entry holding key, or the free entry where it would go
+    private int find(int key){
+        int mask = keys.length - 1;
+        int i = (key * 0x9E3779B9) >>> shift;
+        while (keys[i] != EMPTY && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+}
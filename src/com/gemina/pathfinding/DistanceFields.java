@@ -0,0 +1,225 @@
+package com.gemina.pathfinding;
+
+import com.gemina.mainframe.TerrainGrid;
+import com.gemina.mainframe.TerrainListener;
+import com.gemina.mainframe.Tile;
+
+import java.util.Arrays;
+
+//Movement cost from every tile to the nearest capture point of each owner, with the first step
+//to take toward it. Fields are built once with a multi source Dijkstra and then kept up to date
+//as tiles change: only the tiles whose route went through the changed tile are recomputed,
+//plus whatever the change makes cheaper. Lookups are plain array reads.
+public class DistanceFields implements TerrainListener {
+
+    public static final int NEUTRAL = 0;
+    public static final int RED = 1;
+    public static final int BLUE = 2;
+    public static final int OWNERS = 3;
+
+    //distance of tiles with no route, and of impassable tiles
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+    //direction of a capture point or of a tile without a route
+    public static final byte NONE = 4;
+
+    private static final int[] DX = {1, -1, 0, 0};
+    private static final int[] DY = {0, 0, 1, -1};
+
+    private final TerrainGrid terrain;
+    private final int width;
+    private final int height;
+    private final int[] movementCost = new int[128];
+
+    private final int[][] distances;
+    //index into DX/DY of the neighbour one step closer to the capture point
+    private final byte[][] directions;
+
+    //scratch reused by every update
+    private final IndexedHeap open;
+    private final int[] affected;
+    private final int[] stamp;
+    private int update;
+
+    public DistanceFields(TerrainGrid terrain){
+        this.terrain = terrain;
+        width = terrain.getWidth();
+        height = terrain.getHeight();
+        int n = width * height;
+        for (int id = 0; id < movementCost.length; id++) {
+            movementCost[id] = Tile.getMovement(id);
+        }
+        distances = new int[OWNERS][n];
+        directions = new byte[OWNERS][n];
+        open = new IndexedHeap(n);
+        affected = new int[n];
+        stamp = new int[n];
+
+        for (int owner = 0; owner < OWNERS; owner++) {
+            rebuild(owner);
+        }
+        terrain.addListener(this);
+    }
+
+    //Tile id of the capture point held by an owner
+    public static int getCapturePointId(int owner){
+        return 4 + owner;
+    }
+
+    public int getDistance(int owner, int x, int y){
+        return distances[owner][x + y * width];
+    }
+
+    public int getDistance(int owner, int index){
+        return distances[owner][index];
+    }
+
+    //Index into the four grid directions (+x, -x, +y, -y) of the next step, NONE when there is none
+    public int getDirection(int owner, int index){
+        return directions[owner][index];
+    }
+
+    //Tile index one step closer to the nearest capture point of owner, -1 on a capture point or without route
+    public int getNextStep(int owner, int index){
+        int d = directions[owner][index];
+        return d == NONE ? -1 : index + DX[d] + DY[d] * width;
+    }
+
+    //Stops listening to the terrain
+    public void destroy(){
+        terrain.removeListener(this);
+    }
+
+    //Full recomputation of one field from all capture points of its owner
+    public void rebuild(int owner){
+        int[] dist = distances[owner];
+        byte[] dir = directions[owner];
+        byte[] ids = terrain.getIds();
+        int source = getCapturePointId(owner);
+        Arrays.fill(dist, UNREACHABLE);
+        Arrays.fill(dir, NONE);
+        open.clear();
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] == source) {
+                dist[i] = 0;
+                open.push(i, 0);
+            }
+        }
+        propagate(owner);
+    }
+
+    @Override
+    public void tileChanged(int x, int y, int oldId, int newId){
+        int changed = x + y * width;
+        for (int owner = 0; owner < OWNERS; owner++) {
+            repair(owner, changed);
+        }
+    }
+
+    //Recomputes the tiles whose route depended on the changed tile, then lets any improvement spread
+    private void repair(int owner, int changed){
+        int[] dist = distances[owner];
+        byte[] dir = directions[owner];
+        byte[] ids = terrain.getIds();
+        int source = getCapturePointId(owner);
+
+        //the changed tile and every tile routing through it, found by following directions backwards
+        update++;
+        if (update == Integer.MAX_VALUE) {
+            Arrays.fill(stamp, 0);
+            update = 1;
+        }
+        int count = 0;
+        affected[count++] = changed;
+        stamp[changed] = update;
+        for (int i = 0; i < count; i++) {
+            int current = affected[i];
+            int x = current % width;
+            int y = current / width;
+            for (int d = 0; d < 4; d++) {
+                int nx = x + DX[d];
+                int ny = y + DY[d];
+                if (nx < 0 || ny < 0 || nx >= width || ny >= height) {
+                    continue;
+                }
+                int next = nx + ny * width;
+                int nd = dir[next];
+                //the neighbour steps back onto current when its direction is the opposite of d
+                if (stamp[next] != update && nd != NONE && (nd ^ 1) == d) {
+                    stamp[next] = update;
+                    affected[count++] = next;
+                }
+            }
+        }
+
+        //reseed the affected tiles from their unaffected neighbours
+        open.clear();
+        for (int i = 0; i < count; i++) {
+            int current = affected[i];
+            dist[current] = UNREACHABLE;
+            dir[current] = NONE;
+            if (ids[current] == source) {
+                dist[current] = 0;
+                open.push(current, 0);
+                continue;
+            }
+            if (movementCost[ids[current]] < 0) {
+                continue;
+            }
+            int x = current % width;
+            int y = current / width;
+            for (int d = 0; d < 4; d++) {
+                int nx = x + DX[d];
+                int ny = y + DY[d];
+                if (nx < 0 || ny < 0 || nx >= width || ny >= height) {
+                    continue;
+                }
+                int next = nx + ny * width;
+                int step = movementCost[ids[next]];
+                if (stamp[next] == update || dist[next] == UNREACHABLE || step < 0) {
+                    continue;
+                }
+                int candidate = dist[next] + step;
+                if (candidate < dist[current]) {
+                    dist[current] = candidate;
+                    dir[current] = (byte) d;
+                }
+            }
+            if (dist[current] != UNREACHABLE) {
+                open.push(current, dist[current]);
+            }
+        }
+        propagate(owner);
+    }
+
+    //Dijkstra over the queued tiles: a settled tile offers itself as next step to its neighbours
+    private void propagate(int owner){
+        int[] dist = distances[owner];
+        byte[] dir = directions[owner];
+        byte[] ids = terrain.getIds();
+        while (!open.isEmpty()) {
+            int current = open.pop();
+            int step = movementCost[ids[current]];
+            if (step < 0) {
+                continue;
+            }
+            int candidate = dist[current] + step;
+            int x = current % width;
+            int y = current / width;
+            for (int d = 0; d < 4; d++) {
+                int nx = x + DX[d];
+                int ny = y + DY[d];
+                if (nx < 0 || ny < 0 || nx >= width || ny >= height) {
+                    continue;
+                }
+                int next = nx + ny * width;
+                if (movementCost[ids[next]] < 0 || candidate >= dist[next]) {
+                    continue;
+                }
+                dist[next] = candidate;
+                //the neighbour reaches current by moving the opposite way
+                dir[next] = (byte) (d ^ 1);
+                open.push(next, candidate);
+            }
+        }
+    }
+}
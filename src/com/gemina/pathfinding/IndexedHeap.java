@@ -0,0 +1,116 @@
+package com.gemina.pathfinding;
+
+import java.util.Arrays;
+
+//Binary min heap of node indices keyed by int priorities. Each node is in the heap at most once
+//and its position is tracked, so a lower priority can be applied in place instead of pushing a duplicate.
+public class IndexedHeap {
+
+    private final int[] heap;
+    private final int[] keys;
+    //slot of each node in heap, -1 when the node is not queued
+    private final int[] positions;
+    private int size;
+
+    public IndexedHeap(int capacity){
+        heap = new int[capacity];
+        keys = new int[capacity];
+        positions = new int[capacity];
+        Arrays.fill(positions, -1);
+    }
+
+    public boolean isEmpty(){
+        return size == 0;
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public boolean contains(int node){
+        return positions[node] >= 0;
+    }
+
+    public int getKey(int node){
+        return keys[node];
+    }
+
+    //Inserts a node or lowers its key, a higher key for a queued node is ignored
+    public void push(int node, int key){
+        int slot = positions[node];
+        if (slot < 0) {
+            slot = size++;
+            heap[slot] = node;
+            positions[node] = slot;
+            keys[node] = key;
+            siftUp(slot);
+        } else if (key < keys[node]) {
+            keys[node] = key;
+            siftUp(slot);
+        }
+    }
+
+    public int peekKey(){
+        return keys[heap[0]];
+    }
+
+    //Removes and returns the node with the lowest key
+    public int pop(){
+        int top = heap[0];
+        positions[top] = -1;
+        size--;
+        if (size > 0) {
+            heap[0] = heap[size];
+            positions[heap[0]] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    //Empties the heap, only touching the nodes still queued
+    public void clear(){
+        for (int i = 0; i < size; i++) {
+            positions[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    private void siftUp(int slot){
+        int node = heap[slot];
+        int key = keys[node];
+        while (slot > 0) {
+            int parent = (slot - 1) >>> 1;
+            int parentNode = heap[parent];
+            if (keys[parentNode] <= key) {
+                break;
+            }
+            heap[slot] = parentNode;
+            positions[parentNode] = slot;
+            slot = parent;
+        }
+        heap[slot] = node;
+        positions[node] = slot;
+    }
+
+    private void siftDown(int slot){
+        int node = heap[slot];
+        int key = keys[node];
+        int half = size >>> 1;
+        while (slot < half) {
+            int child = 2 * slot + 1;
+            int right = child + 1;
+            if (right < size && keys[heap[right]] < keys[heap[child]]) {
+                child = right;
+            }
+            int childNode = heap[child];
+            if (key <= keys[childNode]) {
+                break;
+            }
+            heap[slot] = childNode;
+            positions[childNode] = slot;
+            slot = child;
+        }
+        heap[slot] = node;
+        positions[node] = slot;
+    }
+}
@@ -0,0 +1,191 @@
+package com.gemina.pathfinding;
+
+import com.gemina.mainframe.TerrainGrid;
+import com.gemina.mainframe.Tile;
+
+import java.util.Arrays;
+
+//Point to point routes (A*) and movement range flood fills (bounded Dijkstra) over a terrain grid.
+//Entering a tile costs its Tile.getMovement value, tiles with -1 cannot be entered. Units move in
+//the four grid directions. All scratch arrays are allocated once per grid and reused by every query,
+//results stay readable until the next query. Not thread safe, use one finder per thread.
+public class PathFinder {
+
+    private static final int[] DX = {1, -1, 0, 0};
+    private static final int[] DY = {0, 0, 1, -1};
+
+    private final TerrainGrid terrain;
+    private final int width;
+    private final int height;
+
+    //cost of entering a tile by id, -1 when impassable
+    private final int[] movementCost = new int[128];
+    //cheapest cost of any passable tile, keeps the A* heuristic admissible
+    private final int minCost;
+
+    private final IndexedHeap open;
+    private final int[] cost;
+    private final int[] parent;
+    //cost and parent of a tile are only valid when its stamp equals the current query,
+    //a negated stamp marks the tile as settled
+    private final int[] stamp;
+    private int query;
+
+    private final int[] reachable;
+    private int reachableCount;
+    private int pathGoal = -1;
+
+    public PathFinder(TerrainGrid terrain){
+        this.terrain = terrain;
+        width = terrain.getWidth();
+        height = terrain.getHeight();
+        int n = width * height;
+        open = new IndexedHeap(n);
+        cost = new int[n];
+        parent = new int[n];
+        stamp = new int[n];
+        reachable = new int[n];
+
+        int min = Integer.MAX_VALUE;
+        for (int id = 0; id < movementCost.length; id++) {
+            movementCost[id] = Tile.getMovement(id);
+            if (movementCost[id] > 0) {
+                min = Math.min(min, movementCost[id]);
+            }
+        }
+        minCost = min == Integer.MAX_VALUE ? 1 : min;
+    }
+
+    private void nextQuery(){
+        open.clear();
+        query++;
+        if (query == Integer.MAX_VALUE) {
+            Arrays.fill(stamp, 0);
+            query = 1;
+        }
+        reachableCount = 0;
+        pathGoal = -1;
+    }
+
+    private int heuristic(int index, int goalX, int goalY){
+        return (Math.abs(index % width - goalX) + Math.abs(index / width - goalY)) * minCost;
+    }
+
+    //Cheapest route between two tiles, returns its cost or -1 when there is none.
+    //The route itself is read with getPath.
+    public int findPath(int startX, int startY, int goalX, int goalY){
+        nextQuery();
+        if (!terrain.contains(startX, startY) || !terrain.contains(goalX, goalY)) {
+            return -1;
+        }
+        byte[] ids = terrain.getIds();
+        int start = terrain.index(startX, startY);
+        int goal = terrain.index(goalX, goalY);
+        if (movementCost[ids[goal]] < 0) {
+            return -1;
+        }
+
+        stamp[start] = query;
+        cost[start] = 0;
+        parent[start] = -1;
+        open.push(start, heuristic(start, goalX, goalY));
+        while (!open.isEmpty()) {
+            int current = open.pop();
+            if (current == goal) {
+                pathGoal = goal;
+                return cost[goal];
+            }
+            stamp[current] = -query;
+            relax(current, ids, goalX, goalY, Integer.MAX_VALUE, true);
+        }
+        return -1;
+    }
+
+    //Every tile reachable from the start with at most budget movement, the start included.
+    //Returns how many were found, read them with getReachable and their cost with getCost.
+    public int findReachable(int startX, int startY, int budget){
+        nextQuery();
+        if (!terrain.contains(startX, startY)) {
+            return 0;
+        }
+        byte[] ids = terrain.getIds();
+        int start = terrain.index(startX, startY);
+
+        stamp[start] = query;
+        cost[start] = 0;
+        parent[start] = -1;
+        open.push(start, 0);
+        while (!open.isEmpty()) {
+            int current = open.pop();
+            stamp[current] = -query;
+            reachable[reachableCount++] = current;
+            relax(current, ids, 0, 0, budget, false);
+        }
+        return reachableCount;
+    }
+
+    private void relax(int current, byte[] ids, int goalX, int goalY, int budget, boolean astar){
+        int x = current % width;
+        int y = current / width;
+        for (int d = 0; d < 4; d++) {
+            int nx = x + DX[d];
+            int ny = y + DY[d];
+            if (nx < 0 || ny < 0 || nx >= width || ny >= height) {
+                continue;
+            }
+            int next = nx + ny * width;
+            if (stamp[next] == -query) {
+                continue;
+            }
+            int step = movementCost[ids[next]];
+            if (step < 0) {
+                continue;
+            }
+            int nextCost = cost[current] + step;
+            if (nextCost > budget) {
+                continue;
+            }
+            if (stamp[next] != query || nextCost < cost[next]) {
+                stamp[next] = query;
+                cost[next] = nextCost;
+                parent[next] = current;
+                open.push(next, astar ? nextCost + heuristic(next, goalX, goalY) : nextCost);
+            }
+        }
+    }
+
+    //Number of tiles of the last route found by findPath, start and goal included, 0 if none
+    public int getPathLength(){
+        if (pathGoal < 0) {
+            return 0;
+        }
+        int length = 0;
+        for (int node = pathGoal; node >= 0; node = parent[node]) {
+            length++;
+        }
+        return length;
+    }
+
+    //Writes the tile indices of the last route from start to goal into out, returns how many were written
+    public int getPath(int[] out){
+        int length = getPathLength();
+        int i = length;
+        for (int node = pathGoal; node >= 0; node = parent[node]) {
+            out[--i] = node;
+        }
+        return length;
+    }
+
+    public int getReachable(int i){
+        return reachable[i];
+    }
+
+    //Movement spent to get to a tile settled by the last query, -1 when it was not reached
+    public int getCost(int index){
+        return stamp[index] == -query || (index == pathGoal && stamp[index] == query) ? cost[index] : -1;
+    }
+
+    public int getCost(int x, int y){
+        return getCost(terrain.index(x, y));
+    }
+}
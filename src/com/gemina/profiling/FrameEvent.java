@@ -0,0 +1,46 @@
+package com.gemina.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+//One rendered frame with the time of each phase and the GL work it issued, recorded with
+//  java -XX:StartFlightRecording=filename=frames.jfr ...
+@Name("com.gemina.Frame")
+@Label("Frame")
+@Category("Gemina")
+@Description("A frame of the render loop")
+class FrameEvent extends jdk.jfr.Event {
+
+    @Label("Poll Events") @Timespan
+    long poll;
+
+    @Label("Consume Snapshot") @Timespan
+    long sync;
+
+    @Label("Draw Map") @Timespan
+    long drawMap;
+
+    @Label("Draw Units") @Timespan
+    long drawUnits;
+
+    @Label("Overlay") @Timespan
+    long overlay;
+
+    @Label("Swap Buffers") @Timespan
+    long swap;
+
+    @Label("Draw Calls")
+    int drawCalls;
+
+    @Label("Texture Binds")
+    int textureBinds;
+
+    @Label("Buffer Uploads")
+    int bufferUploads;
+
+    @Label("Uploaded Bytes")
+    long uploadedBytes;
+}
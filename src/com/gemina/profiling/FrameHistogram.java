@@ -0,0 +1,71 @@
+package com.gemina.profiling;
+
+import java.util.Arrays;
+
+//The last few hundred frame times in a ring, with percentiles and fixed width buckets over them
+public class FrameHistogram {
+
+    private final long[] samples;
+    private final long[] sorted;
+    private int next;
+    private int count;
+
+    public FrameHistogram(int capacity){
+        samples = new long[capacity];
+        sorted = new long[capacity];
+    }
+
+    public void add(long nanos){
+        samples[next] = nanos;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+    }
+
+    public void clear(){
+        next = 0;
+        count = 0;
+    }
+
+    public int size(){
+        return count;
+    }
+
+    public int getCapacity(){
+        return samples.length;
+    }
+
+    //The i-th oldest sample still in the window
+    public long get(int i){
+        return samples[(next - count + i + samples.length) % samples.length];
+    }
+
+    public long getMean(){
+        if (count == 0) {
+            return 0;
+        }
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            total += samples[i];
+        }
+        return total / count;
+    }
+
+    //Percentile p in 0..1, sorts a copy so call it a few times a second rather than per frame
+    public long getPercentile(double p){
+        if (count == 0) {
+            return 0;
+        }
+        System.arraycopy(samples, 0, sorted, 0, count);
+        Arrays.sort(sorted, 0, count);
+        int index = Math.min(count - 1, Math.max(0, (int) Math.ceil(p * count) - 1));
+        return sorted[index];
+    }
+
+    //Counts samples per bucket of bucketNanos, the last bucket also holds everything slower
+    public void getBuckets(int[] buckets, long bucketNanos){
+        Arrays.fill(buckets, 0);
+        for (int i = 0; i < count; i++) {
+            buckets[(int) Math.min(buckets.length - 1, samples[i] / bucketNanos)]++;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.gemina.profiling;
+
+import jdk.jfr.EventType;
+
+//Phase timers for the render loop and the simulation tick. Active while enabled, e.g. for the debug
+//overlay, or while a flight recording has the Gemina events turned on. Inactive, every call is a
+//field test and returns, so the timers can stay in the loop.
+//Frame methods are render thread only, tick methods simulation thread only.
+public class Profiler {
+
+    public static final int POLL = 0;
+    public static final int SYNC = 1;
+    public static final int DRAW_MAP = 2;
+    public static final int DRAW_UNITS = 3;
+    public static final int OVERLAY = 4;
+    public static final int SWAP = 5;
+    public static final int PHASES = 6;
+
+    static final String[] PHASE_NAMES = {"poll", "sync", "map", "units", "overlay", "swap"};
+
+    private static final EventType FRAME_TYPE = EventType.getEventType(FrameEvent.class);
+    private static final EventType TICK_TYPE = EventType.getEventType(TickEvent.class);
+
+    //toggled from the render thread, read by both
+    static volatile boolean enabled;
+    //decided once per frame so a frame is measured completely or not at all
+    static boolean active;
+    static long frameStart;
+    static final long[] phaseNanos = new long[PHASES];
+    //phase times of the last finished frame
+    static final long[] lastPhaseNanos = new long[PHASES];
+    static final FrameHistogram frames = new FrameHistogram(240);
+    //frame being recorded for a flight recording, begun with the frame so its duration is the frame time
+    static FrameEvent frameEvent;
+
+    //tick being recorded for a flight recording, simulation thread only
+    static TickEvent tickEvent;
+    static volatile long lastTickNanos;
+    static volatile long slowestTickNanos;
+    //set when disabling, the simulation thread clears slowestTickNanos itself so it is written by one thread only
+    static volatile boolean resetSlowestTick;
+
+    public static void setEnabled(boolean value){
+        enabled = value;
+        if (!value) {
+            frames.clear();
+            resetSlowestTick = true;
+        }
+    }
+
+    public static boolean isEnabled(){
+        return enabled;
+    }
+
+    public static void beginFrame(){
+        active = enabled || FRAME_TYPE.isEnabled();
+        if (active) {
+            frameStart = System.nanoTime();
+            for (int i = 0; i < PHASES; i++) {
+                phaseNanos[i] = 0;
+            }
+        }
+        if (FRAME_TYPE.isEnabled()) {
+            frameEvent = new FrameEvent();
+            frameEvent.begin();
+        }
+    }
+
+    //Start time of a phase, pass it to end
+    public static long begin(){
+        return active ? System.nanoTime() : 0;
+    }
+
+    public static void end(int phase, long start){
+        if (active) {
+            phaseNanos[phase] += System.nanoTime() - start;
+        }
+    }
+
+    //Closes the frame with the GL counters it accumulated
+    public static void endFrame(int drawCalls, int textureBinds, int bufferUploads, long uploadedBytes){
+        if (!active) {
+            return;
+        }
+        long total = System.nanoTime() - frameStart;
+        System.arraycopy(phaseNanos, 0, lastPhaseNanos, 0, PHASES);
+        if (enabled) {
+            frames.add(total);
+        }
+        if (frameEvent != null) {
+            FrameEvent event = frameEvent;
+            event.poll = phaseNanos[POLL];
+            event.sync = phaseNanos[SYNC];
+            event.drawMap = phaseNanos[DRAW_MAP];
+            event.drawUnits = phaseNanos[DRAW_UNITS];
+            event.overlay = phaseNanos[OVERLAY];
+            event.swap = phaseNanos[SWAP];
+            event.drawCalls = drawCalls;
+            event.textureBinds = textureBinds;
+            event.bufferUploads = bufferUploads;
+            event.uploadedBytes = uploadedBytes;
+            event.commit();
+            frameEvent = null;
+        }
+    }
+
+    //Start of a simulation tick, 0 when nothing is measured
+    public static long beginTick(){
+        if (TICK_TYPE.isEnabled()) {
+            tickEvent = new TickEvent();
+            tickEvent.begin();
+        }
+        return enabled || tickEvent != null ? System.nanoTime() : 0;
+    }
+
+    public static void endTick(long start, long tick){
+        if (start == 0) {
+            return;
+        }
+        long end = System.nanoTime();
+        lastTickNanos = end - start;
+        if (resetSlowestTick) {
+            resetSlowestTick = false;
+            slowestTickNanos = 0;
+        }
+        if (lastTickNanos > slowestTickNanos) {
+            slowestTickNanos = lastTickNanos;
+        }
+        if (tickEvent != null) {
+            tickEvent.tick = tick;
+            tickEvent.commit();
+            tickEvent = null;
+        }
+    }
+
+    public static FrameHistogram getFrames(){
+        return frames;
+    }
+
+    public static long getPhaseNanos(int phase){
+        return lastPhaseNanos[phase];
+    }
+
+    public static String getPhaseName(int phase){
+        return PHASE_NAMES[phase];
+    }
+
+    public static long getLastTickNanos(){
+        return lastTickNanos;
+    }
+
+    public static long getSlowestTickNanos(){
+        return slowestTickNanos;
+    }
+}
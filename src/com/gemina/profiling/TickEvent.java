@@ -0,0 +1,15 @@
+package com.gemina.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+//One fixed step of the simulation thread, its duration is the event's own
+@Name("com.gemina.Tick")
+@Label("Simulation Tick")
+@Category("Gemina")
+class TickEvent extends jdk.jfr.Event {
+
+    @Label("Tick")
+    long tick;
+}
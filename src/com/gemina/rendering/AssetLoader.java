@@ -0,0 +1,213 @@
+package com.gemina.rendering;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.lwjgl.system.MemoryStack;
+import static org.lwjgl.stb.STBImage.*;
+
+//Decodes images of a folder on a pool of worker threads. Each file is decoded at most once, later requests
+//for the same file get the same result. GL uploads stay with the caller on the context thread.
+//With a cache folder set, decoded RGBA pixels are written next to a header and reused on the next start
+//as long as the source file is unchanged.
+public class AssetLoader {
+
+    //RGBA pixels of one decoded file
+    public static class Image {
+        public final String name;
+        public final int width;
+        public final int height;
+        public final ByteBuffer pixels;
+        private final boolean fromStb;
+
+        Image(String name, int width, int height, ByteBuffer pixels, boolean fromStb){
+            this.name = name;
+            this.width = width;
+            this.height = height;
+            this.pixels = pixels;
+            this.fromStb = fromStb;
+        }
+
+        private void free(){
+            if (fromStb) {
+                stbi_image_free(pixels);
+            }
+        }
+    }
+
+    private static final int CACHE_MAGIC = 0x47524241;
+
+    private final String folder;
+    private final ExecutorService workers;
+    private final ConcurrentHashMap<String, CompletableFuture<Image>> cache = new ConcurrentHashMap<>();
+    private File cacheFolder;
+
+    public AssetLoader(String folder){
+        this(folder, Runtime.getRuntime().availableProcessors());
+    }
+
+    public AssetLoader(String folder, int threads){
+        this.folder = folder;
+        workers = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "asset-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    //Enables the decoded pixel cache for warm starts
+    public void setCacheFolder(String path){
+        cacheFolder = new File(path);
+        cacheFolder.mkdirs();
+    }
+
+    public void shutdown(){
+        workers.shutdown();
+    }
+
+    //Sorted names of every png in the folder
+    public List<String> list(){
+        File[] files = new File(folder).listFiles((dir, name) -> name.endsWith(".png"));
+        if (files == null || files.length == 0)
+            throw new IllegalStateException("No images found in " + folder);
+        List<String> names = new ArrayList<>();
+        for (File file : files) {
+            names.add(file.getName());
+        }
+        names.sort(null);
+        return names;
+    }
+
+    //Width and height from the file header only, without decoding the pixels
+    public int[] getSize(String name){
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer w = stack.mallocInt(1);
+            IntBuffer h = stack.mallocInt(1);
+            IntBuffer comp = stack.mallocInt(1);
+            if (!stbi_info(path(name), w, h, comp))
+                throw new IllegalStateException("Failed to read " + name + ": " + stbi_failure_reason());
+            return new int[]{w.get(0), h.get(0)};
+        }
+    }
+
+    //Starts decoding a file, or returns the decode already started for it
+    public CompletableFuture<Image> request(String name){
+        return cache.computeIfAbsent(name, key -> CompletableFuture.supplyAsync(() -> decode(key), workers));
+    }
+
+    //Drops a file from the cache so the next request decodes it again, e.g. after it was edited
+    public void invalidate(String name){
+        cache.remove(name);
+    }
+
+    //Frees the pixels of an uploaded image and forgets it, a later request decodes the file again
+    public void release(Image image){
+        cache.remove(image.name);
+        image.free();
+    }
+
+    private String path(String name){
+        return folder + "/" + name;
+    }
+
+    private Image decode(String name){
+        File source = new File(path(name));
+        Image cached = readCache(name, source);
+        if (cached != null) {
+            return cached;
+        }
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer w = stack.mallocInt(1);
+            IntBuffer h = stack.mallocInt(1);
+            IntBuffer comp = stack.mallocInt(1);
+            ByteBuffer data = stbi_load(source.getPath(), w, h, comp, 4);
+            if (data == null)
+                throw new IllegalStateException("Failed to load " + name + ": " + stbi_failure_reason());
+            Image image = new Image(name, w.get(0), h.get(0), data, true);
+            writeCache(image, source);
+            return image;
+        }
+    }
+
+    //Cache entry layout: magic, source length, source modification time, width, height, RGBA pixels
+    private File cacheFile(String name){
+        return new File(cacheFolder, name + ".rgba");
+    }
+
+    private Image readCache(String name, File source){
+        if (cacheFolder == null || !cacheFile(name).isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(cacheFile(name).toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(28).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            header.flip();
+            if (header.remaining() < 28 || header.getInt() != CACHE_MAGIC || header.getLong() != source.length()
+                    || header.getLong() != source.lastModified()) {
+                return null;
+            }
+            int width = header.getInt();
+            int height = header.getInt();
+            ByteBuffer pixels = ByteBuffer.allocateDirect(width * height * 4);
+            while (pixels.hasRemaining() && channel.read(pixels, 28 + pixels.position()) > 0) {
+            }
+            if (pixels.hasRemaining()) {
+                return null;
+            }
+            pixels.flip();
+            return new Image(name, width, height, pixels, false);
+        } catch (IOException e) {
+            //a broken cache entry only costs a decode
+            return null;
+        }
+    }
+
+    private void writeCache(Image image, File source){
+        if (cacheFolder == null) {
+            return;
+        }
+        Path target = cacheFile(image.name).toPath();
+        Path temp = new File(cacheFolder, image.name + ".tmp").toPath();
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(28).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(CACHE_MAGIC).putLong(source.length()).putLong(source.lastModified())
+                    .putInt(image.width).putInt(image.height).flip();
+            channel.write(header);
+            ByteBuffer pixels = image.pixels.duplicate();
+            while (pixels.hasRemaining()) {
+                channel.write(pixels);
+            }
+        } catch (IOException e) {
+            return;
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            temp.toFile().delete();
+        }
+    }
+
+    //Futures of several files in request order
+    public List<CompletableFuture<Image>> requestAll(List<String> names){
+        List<CompletableFuture<Image>> futures = new ArrayList<>(names.size());
+        for (String name : names) {
+            futures.add(request(name));
+        }
+        return futures;
+    }
+}
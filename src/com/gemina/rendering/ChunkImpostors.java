@@ -0,0 +1,190 @@
+package com.gemina.rendering;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.GL_CLAMP_TO_EDGE;
+import static org.lwjgl.opengl.GL13.*;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL30.*;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import org.lwjgl.BufferUtils;
+
+//Low resolution pictures of map chunks for zoomed out views. Each chunk is rendered once through a
+//framebuffer into its own region of one texture laid out like the map, so the texture is a small image
+//of the whole world, and is rendered again only when one of its tiles changed. Far out the visible part
+//of the map is then one textured quad through the impostor shader, whatever the number of tiles.
+//Every chunk gets the same whole number of pixels, so a tile can get less than one on large maps.
+public class ChunkImpostors {
+
+    //side limit of the texture, large maps get fewer pixels per tile instead of more memory
+    private static final int MAX_TEXTURE_SIZE = 2048;
+    private static final int MAX_PIXELS_PER_TILE = 8;
+
+    private final int chunkSize;
+    private final int pixelsPerChunk;
+    //tiles covered by the texture, the map rounded up to whole chunks
+    private final int coveredWidth;
+    private final int coveredHeight;
+    private final int tileWidth;
+    private final int tileHeight;
+
+    private int texture_id;
+    private int fbo_id;
+    //stands in for the fog texture while baking, fog is applied when the impostor is drawn
+    private int white_id;
+    private int vao_id;
+    private int v_id;
+
+    private final FloatBuffer quad = BufferUtils.createFloatBuffer(16);
+    private final IntBuffer viewport = BufferUtils.createIntBuffer(4);
+    private int baked;
+
+    public ChunkImpostors(int mapWidth, int mapHeight, int chunkSize, int tileWidth, int tileHeight){
+        this.chunkSize = chunkSize;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        int chunksX = (mapWidth + chunkSize - 1) / chunkSize;
+        int chunksY = (mapHeight + chunkSize - 1) / chunkSize;
+        coveredWidth = chunksX * chunkSize;
+        coveredHeight = chunksY * chunkSize;
+        //only maps of more than MAX_TEXTURE_SIZE chunks a side go past the limit, at one pixel per chunk
+        pixelsPerChunk = Math.max(1, Math.min(MAX_PIXELS_PER_TILE * chunkSize, MAX_TEXTURE_SIZE / Math.max(chunksX, chunksY)));
+
+        texture_id = glGenTextures();
+        glBindTexture(GL_TEXTURE_2D, texture_id);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR_MIPMAP_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA8, chunksX * pixelsPerChunk, chunksY * pixelsPerChunk, 0,
+                GL_RGBA, GL_UNSIGNED_BYTE, (ByteBuffer) null);
+        glGenerateMipmap(GL_TEXTURE_2D);
+
+        fbo_id = glGenFramebuffers();
+        glBindFramebuffer(GL_FRAMEBUFFER, fbo_id);
+        glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, texture_id, 0);
+        int status = glCheckFramebufferStatus(GL_FRAMEBUFFER);
+        if (status != GL_FRAMEBUFFER_COMPLETE) {
+            glBindFramebuffer(GL_FRAMEBUFFER, 0);
+            throw new IllegalStateException("Impostor framebuffer is incomplete: 0x" + Integer.toHexString(status));
+        }
+        //chunks not baked yet show black, like unexplored ones
+        glClear(GL_COLOR_BUFFER_BIT);
+        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+
+        white_id = glGenTextures();
+        glBindTexture(GL_TEXTURE_2D, white_id);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+        ByteBuffer white = BufferUtils.createByteBuffer(4);
+        white.put((byte) 255).put((byte) 255).put((byte) 255).put((byte) 255).flip();
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA8, 1, 1, 0, GL_RGBA, GL_UNSIGNED_BYTE, white);
+        glBindTexture(GL_TEXTURE_2D, 0);
+
+        //one quad in the impostor shader's layout: tile position and texture coordinate, rewritten per draw
+        vao_id = glGenVertexArrays();
+        glBindVertexArray(vao_id);
+        v_id = glGenBuffers();
+        glBindBuffer(GL_ARRAY_BUFFER, v_id);
+        glBufferData(GL_ARRAY_BUFFER, 16 * Float.BYTES, GL_STREAM_DRAW);
+        glEnableVertexAttribArray(0);
+        glVertexAttribPointer(0, 2, GL_FLOAT, false, 4 * Float.BYTES, 0);
+        glEnableVertexAttribArray(1);
+        glVertexAttribPointer(1, 2, GL_FLOAT, false, 4 * Float.BYTES, 2 * Float.BYTES);
+        glBindVertexArray(0);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    public void destroy(){
+        glDeleteFramebuffers(fbo_id);
+        glDeleteTextures(texture_id);
+        glDeleteTextures(white_id);
+        glDeleteVertexArrays(vao_id);
+        glDeleteBuffers(v_id);
+    }
+
+    //Redirects drawing into the impostor texture, the tile shader has to be bound with its tileSize
+    //and image uniforms set and the texture pack to bake on texture unit 0
+    public void beginBake(){
+        glGetIntegerv(GL_VIEWPORT, viewport);
+        glBindFramebuffer(GL_FRAMEBUFFER, fbo_id);
+        glActiveTexture(GL_TEXTURE1);
+        glBindTexture(GL_TEXTURE_2D, white_id);
+        glActiveTexture(GL_TEXTURE0);
+        baked = 0;
+    }
+
+    //Renders the chunk at (chunkX, chunkY), already built into the mesh's slot, into its region. Tiles of
+    //chunks on the map's edge that lie outside the map stay black
+    public void bake(Shader tileShader, ChunkMeshes meshes, int slot, int chunkX, int chunkY){
+        int x = chunkX * pixelsPerChunk;
+        int y = chunkY * pixelsPerChunk;
+        glViewport(x, y, pixelsPerChunk, pixelsPerChunk);
+        //clearing ignores the viewport, the scissor keeps it to this chunk's region
+        glEnable(GL_SCISSOR_TEST);
+        glScissor(x, y, pixelsPerChunk, pixelsPerChunk);
+        glClear(GL_COLOR_BUFFER_BIT);
+        glDisable(GL_SCISSOR_TEST);
+        int x0 = chunkX * chunkSize;
+        int y0 = chunkY * chunkSize;
+        tileShader.setUniform("view", x0 * tileWidth, y0 * tileHeight, (x0 + chunkSize) * tileWidth, (y0 + chunkSize) * tileHeight);
+        meshes.draw(slot);
+        meshes.endDraw();
+        baked++;
+    }
+
+    //Back to the window, refreshes the mip levels when anything was baked
+    public void endBake(){
+        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+        glViewport(viewport.get(0), viewport.get(1), viewport.get(2), viewport.get(3));
+        if (baked > 0) {
+            glBindTexture(GL_TEXTURE_2D, texture_id);
+            glGenerateMipmap(GL_TEXTURE_2D);
+            glBindTexture(GL_TEXTURE_2D, 0);
+        }
+    }
+
+    //Draws the tiles [x0, x1) x [y0, y1) as one quad. The impostor shader has to be bound with its view, tileSize,
+    //fog and mapSize uniforms set and the image sampler on unit 0, which this binds the impostors to
+    public void draw(int x0, int y0, int x1, int y1){
+        if (x0 >= x1 || y0 >= y1) {
+            return;
+        }
+        float u1 = (float) x0 / coveredWidth;
+        float v1 = (float) y0 / coveredHeight;
+        float u2 = (float) x1 / coveredWidth;
+        float v2 = (float) y1 / coveredHeight;
+        //framebuffer rows start at the bottom, so v grows with the tile y unlike in the tile images
+        quad.clear();
+        quad.put(x0).put(y0).put(u1).put(v1);
+        quad.put(x0).put(y1).put(u1).put(v2);
+        quad.put(x1).put(y0).put(u2).put(v1);
+        quad.put(x1).put(y1).put(u2).put(v2);
+        quad.flip();
+
+        glBindTexture(GL_TEXTURE_2D, texture_id);
+        RenderStats.textureBinds++;
+        glBindBuffer(GL_ARRAY_BUFFER, v_id);
+        glBufferSubData(GL_ARRAY_BUFFER, 0, quad);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        RenderStats.bufferUploads++;
+        RenderStats.uploadedBytes += 16 * Float.BYTES;
+
+        glBindVertexArray(vao_id);
+        glDrawArrays(GL_TRIANGLE_STRIP, 0, 4);
+        glBindVertexArray(0);
+        RenderStats.drawCalls++;
+    }
+
+    public int getBaked(){
+        return baked;
+    }
+
+    public float getPixelsPerTile(){
+        return (float) pixelsPerChunk / chunkSize;
+    }
+}
@@ -0,0 +1,142 @@
+package com.gemina.rendering;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL30.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+import org.lwjgl.BufferUtils;
+
+//GPU resident meshes for map chunks, drawn through the tile shader. A chunk is uploaded once
+//when built and afterwards only drawn, it is rebuilt only when the caller decides its content changed.
+//Each vertex is eight bytes: the tile grid position as two shorts, then the corner's texture coordinate,
+//0 or 1, and the texture array layer as unsigned bytes, so a mesh fits every texture pack.
+public class ChunkMeshes {
+
+    private static final int VERTEX_BYTES = 8;
+    private static final int QUAD_BYTES = VERTEX_BYTES * 4;
+
+    private final int quadsPerChunk;
+
+    private int[] vao_ids;
+    private int[] v_ids;
+    private int[] quadCounts;
+    private int i_id;
+
+    //staging for the chunk being built, shared by all chunks
+    private ByteBuffer staging;
+    private int building = -1;
+    private int buildQuads;
+
+    public ChunkMeshes(int chunkCount, int quadsPerChunk){
+        if (quadsPerChunk * 4 > 0xFFFF)
+            throw new IllegalArgumentException("Chunks of " + quadsPerChunk + " quads do not fit 16 bit indices");
+        this.quadsPerChunk = quadsPerChunk;
+        vao_ids = new int[chunkCount];
+        v_ids = new int[chunkCount];
+        quadCounts = new int[chunkCount];
+
+        staging = BufferUtils.createByteBuffer(quadsPerChunk * QUAD_BYTES);
+
+        //every chunk uses the same quad layout, so one index buffer serves all of them
+        ShortBuffer indices = BufferUtils.createShortBuffer(quadsPerChunk * 6);
+        for (int q = 0; q < quadsPerChunk; q++) {
+            int base = q * 4;
+            indices.put((short) base).put((short) (base + 1)).put((short) (base + 2))
+                    .put((short) (base + 2)).put((short) (base + 1)).put((short) (base + 3));
+        }
+        indices.flip();
+        i_id = glGenBuffers();
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, i_id);
+        glBufferData(GL_ELEMENT_ARRAY_BUFFER, indices, GL_STATIC_DRAW);
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
+    }
+
+    public void destroy(){
+        for (int i = 0; i < v_ids.length; i++) {
+            if (v_ids[i] != 0) {
+                glDeleteVertexArrays(vao_ids[i]);
+                glDeleteBuffers(v_ids[i]);
+            }
+        }
+        glDeleteBuffers(i_id);
+    }
+
+    //Starts rebuilding a chunk, quads are queued with add and uploaded by end
+    public void begin(int chunk){
+        building = chunk;
+        buildQuads = 0;
+        staging.clear();
+    }
+
+    //Queues the tile at (x, y) showing a texture array layer, layers go up to 255
+    public void add(int x, int y, int layer){
+        if (buildQuads == quadsPerChunk)
+            throw new IllegalStateException("Chunk " + building + " holds at most " + quadsPerChunk + " quads");
+        //same corner order as Model: bottom left, top left, bottom right, top right, v 0 being the top of the image
+        vertex(x, y, 0, 1, layer);
+        vertex(x, y + 1, 0, 0, layer);
+        vertex(x + 1, y, 1, 1, layer);
+        vertex(x + 1, y + 1, 1, 0, layer);
+        buildQuads++;
+    }
+
+    private void vertex(int x, int y, int u, int v, int layer){
+        staging.putShort((short) x).putShort((short) y).put((byte) u).put((byte) v).put((byte) layer).put((byte) 0);
+    }
+
+    public void end(){
+        staging.flip();
+        if (v_ids[building] == 0) {
+            create(building);
+        }
+        glBindBuffer(GL_ARRAY_BUFFER, v_ids[building]);
+        RenderStats.uploadedBytes += staging.remaining();
+        glBufferSubData(GL_ARRAY_BUFFER, 0, staging);
+        RenderStats.bufferUploads++;
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+
+        quadCounts[building] = buildQuads;
+        building = -1;
+    }
+
+    //Storage is sized for a full chunk so later rebuilds never reallocate
+    private void create(int chunk){
+        vao_ids[chunk] = glGenVertexArrays();
+        glBindVertexArray(vao_ids[chunk]);
+
+        v_ids[chunk] = glGenBuffers();
+        glBindBuffer(GL_ARRAY_BUFFER, v_ids[chunk]);
+        glBufferData(GL_ARRAY_BUFFER, (long) quadsPerChunk * QUAD_BYTES, GL_STATIC_DRAW);
+
+        glEnableVertexAttribArray(0);
+        glVertexAttribPointer(0, 2, GL_SHORT, false, VERTEX_BYTES, 0);
+        glEnableVertexAttribArray(1);
+        glVertexAttribPointer(1, 3, GL_UNSIGNED_BYTE, false, VERTEX_BYTES, 2 * Short.BYTES);
+
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, i_id);
+        glBindVertexArray(0);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    public boolean isBuilt(int chunk){
+        return v_ids[chunk] != 0;
+    }
+
+    //The tile shader has to be bound with its view and tileSize uniforms set and a texture pack bound
+    public void draw(int chunk){
+        if (quadCounts[chunk] == 0) {
+            return;
+        }
+        glBindVertexArray(vao_ids[chunk]);
+        glDrawElements(GL_TRIANGLES, quadCounts[chunk] * 6, GL_UNSIGNED_SHORT, 0);
+        RenderStats.drawCalls++;
+    }
+
+    public void endDraw(){
+        glBindVertexArray(0);
+    }
+}
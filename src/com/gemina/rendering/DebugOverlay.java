@@ -0,0 +1,92 @@
+package com.gemina.rendering;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.stb.STBEasyFont.stb_easy_font_print;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+import com.gemina.profiling.FrameHistogram;
+import org.lwjgl.BufferUtils;
+
+//Text lines and a frame time graph drawn in window coordinates with the fixed function pipeline.
+//The text is only turned into quads when it changes, drawing replays the cached quads.
+public class DebugOverlay {
+
+    private static final int LINE_HEIGHT = 12;
+    //stb easy font writes 4 vertices of 16 bytes per quad, about 270 bytes per character
+    private static final int TEXT_BYTES = 128 * 1024;
+    //frame times at the top of the graph
+    private static final double GRAPH_NANOS = 50_000_000;
+
+    private final ByteBuffer text = BufferUtils.createByteBuffer(TEXT_BYTES);
+    private int textQuads;
+    private final FloatBuffer graph;
+
+    public DebugOverlay(int graphSamples){
+        graph = BufferUtils.createFloatBuffer(graphSamples * 4);
+    }
+
+    //Lays out lines starting at (x, y), top left, in window pixels
+    public void setText(String[] lines, int count, float x, float y){
+        text.clear();
+        textQuads = 0;
+        for (int i = 0; i < count; i++) {
+            ByteBuffer line = text.slice();
+            textQuads += stb_easy_font_print(x, y + i * LINE_HEIGHT, lines[i], null, line);
+            text.position(textQuads * 64);
+        }
+        text.flip();
+    }
+
+    //Fills the rectangle, then draws the text and a bar per frame of frames in the bottom graphHeight pixels.
+    //Without frames only the background is drawn
+    public void draw(int x, int y, int width, int height, int graphHeight, FrameHistogram frames){
+        glDisable(GL_TEXTURE_2D);
+        glColor4f(0.08f, 0.08f, 0.1f, 1);
+        glRecti(x, y, x + width, y + height);
+
+        if (frames == null) {
+            glColor4f(1, 1, 1, 1);
+            glEnable(GL_TEXTURE_2D);
+            return;
+        }
+        glEnableClientState(GL_VERTEX_ARRAY);
+        if (textQuads > 0) {
+            glColor4f(0.9f, 0.9f, 0.9f, 1);
+            glVertexPointer(2, GL_FLOAT, 16, text);
+            glDrawArrays(GL_QUADS, 0, textQuads * 4);
+            RenderStats.drawCalls++;
+        }
+
+        if (frames.size() > 0) {
+            int bottom = y + height - 4;
+            int samples = Math.min(frames.size(), Math.min(width - 8, graph.capacity() / 4));
+            graph.clear();
+            for (int i = 0; i < samples; i++) {
+                long nanos = frames.get(frames.size() - samples + i);
+                float barX = x + 4 + i;
+                graph.put(barX).put(bottom).put(barX).put((float) (bottom - Math.min(1, nanos / GRAPH_NANOS) * graphHeight));
+            }
+            graph.flip();
+            glColor4f(0.3f, 0.8f, 0.4f, 1);
+            glVertexPointer(2, GL_FLOAT, 0, graph);
+            glDrawArrays(GL_LINES, 0, samples * 2);
+            RenderStats.drawCalls++;
+
+            //reference lines at 60 and 30 frames per second
+            glColor4f(0.8f, 0.8f, 0.3f, 0.6f);
+            float fps60 = (float) (bottom - 16_666_667 / GRAPH_NANOS * graphHeight);
+            float fps30 = (float) (bottom - 33_333_333 / GRAPH_NANOS * graphHeight);
+            glBegin(GL_LINES);
+            glVertex2f(x + 4, fps60);
+            glVertex2f(x + width - 4, fps60);
+            glVertex2f(x + 4, fps30);
+            glVertex2f(x + width - 4, fps30);
+            glEnd();
+        }
+        glDisableClientState(GL_VERTEX_ARRAY);
+        glColor4f(1, 1, 1, 1);
+        glEnable(GL_TEXTURE_2D);
+    }
+}
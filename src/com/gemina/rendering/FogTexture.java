@@ -0,0 +1,102 @@
+package com.gemina.rendering;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.GL_CLAMP_TO_EDGE;
+import static org.lwjgl.opengl.GL13.*;
+import static org.lwjgl.opengl.GL30.GL_R8;
+
+import java.nio.ByteBuffer;
+
+import org.lwjgl.BufferUtils;
+
+//One brightness texel per map tile, multiplied into the tile color by the tile shader: full for visible
+//tiles, dimmed for tiles seen before and black for tiles never seen. Updated from visibility bitsets,
+//only for the rectangle of tiles that is on screen.
+public class FogTexture {
+
+    public static final byte VISIBLE = (byte) 255;
+    public static final byte EXPLORED = (byte) 96;
+    public static final byte HIDDEN = 0;
+
+    private int id;
+    private final int width;
+    private final int height;
+    private ByteBuffer staging;
+
+    public FogTexture(int width, int height){
+        this.width = width;
+        this.height = height;
+        staging = BufferUtils.createByteBuffer(width * height);
+        id = glGenTextures();
+        glBindTexture(GL_TEXTURE_2D, id);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_R8, width, height, 0, GL_RED, GL_UNSIGNED_BYTE, (ByteBuffer) null);
+        glBindTexture(GL_TEXTURE_2D, 0);
+    }
+
+    public void destroy(){
+        glDeleteTextures(id);
+    }
+
+    //Sets every tile to one brightness, e.g. VISIBLE when fog is off
+    public void fill(byte value){
+        staging.clear();
+        for (int i = 0; i < width * height; i++) {
+            staging.put(value);
+        }
+        staging.flip();
+        upload(0, 0, width, height);
+    }
+
+    //Copies the tiles [x0, x1) x [y0, y1) from visibility bitsets indexed x + y * width
+    public void update(long[] visible, long[] explored, int x0, int y0, int x1, int y1){
+        if (x0 >= x1 || y0 >= y1) {
+            return;
+        }
+        staging.clear();
+        for (int y = y0; y < y1; y++) {
+            for (int x = x0; x < x1; x++) {
+                int i = x + y * width;
+                long bit = 1L << i;
+                if ((visible[i >> 6] & bit) != 0)
+                    staging.put(VISIBLE);
+                else if ((explored[i >> 6] & bit) != 0)
+                    staging.put(EXPLORED);
+                else
+                    staging.put(HIDDEN);
+            }
+        }
+        staging.flip();
+        upload(x0, y0, x1 - x0, y1 - y0);
+    }
+
+    private void upload(int x, int y, int w, int h){
+        glBindTexture(GL_TEXTURE_2D, id);
+        //rows of single byte texels are not 4 byte aligned
+        glPixelStorei(GL_UNPACK_ALIGNMENT, 1);
+        glTexSubImage2D(GL_TEXTURE_2D, 0, x, y, w, h, GL_RED, GL_UNSIGNED_BYTE, staging);
+        glPixelStorei(GL_UNPACK_ALIGNMENT, 4);
+        glBindTexture(GL_TEXTURE_2D, 0);
+        RenderStats.bufferUploads++;
+        RenderStats.uploadedBytes += w * h;
+    }
+
+    //Binds to a texture unit, the atlas stays on unit 0
+    public void bind(int unit){
+        glActiveTexture(GL_TEXTURE0 + unit);
+        glBindTexture(GL_TEXTURE_2D, id);
+        glActiveTexture(GL_TEXTURE0);
+        RenderStats.textureBinds++;
+    }
+
+    public int getWidth(){
+        return width;
+    }
+
+    public int getHeight(){
+        return height;
+    }
+}
@@ -0,0 +1,219 @@
+package com.gemina.rendering;
+
+import static org.lwjgl.opengl.GL11.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import org.lwjgl.BufferUtils;
+
+//Overview of the whole map for the side panel: one texel per tile colored by tile id, so towers show
+//their owner, with dots for units and the camera's frame drawn on top. The texture is created once per
+//map and afterwards only patched with glTexSubImage2D for tiles whose id or explored state changed,
+//one call per row with changes covering its changed span, so its cost follows the changes and not the map.
+//Drawn with the fixed function pipeline in window coordinates, y down.
+public class Minimap {
+
+    //RGBA per tile id: nothing, road, grass, tree, neutral, red and blue tower
+    private static final int[] COLORS = {0x000000ff, 0xb09060ff, 0x4c9a3cff, 0x2a5a24ff, 0xc8c8c8ff, 0xe03030ff, 0x3050e0ff};
+    private static final int UNEXPLORED = 0x000000ff;
+
+    private int id;
+    private final int width;
+    private final int height;
+    //tile ids and explored bits the texture currently shows
+    private final byte[] ids;
+    private final long[] explored;
+    private long exploredVersion = -1;
+
+    //changed span of every row, min inclusive and max exclusive, and the rows that have one
+    private final int[] rowMin;
+    private final int[] rowMax;
+    private final int[] dirtyRows;
+    private int dirtyRowCount;
+    private final ByteBuffer staging;
+
+    private FloatBuffer dots = BufferUtils.createFloatBuffer(2 * 1024);
+    //colors are written as 0xRRGGBBAA ints, big endian puts them in RGBA byte order
+    private ByteBuffer dotColors = BufferUtils.createByteBuffer(4 * 1024).order(ByteOrder.BIG_ENDIAN);
+    private int dotCount;
+
+    //Starts with every tile unexplored, ids is copied
+    public Minimap(int width, int height, byte[] ids){
+        this.width = width;
+        this.height = height;
+        this.ids = ids.clone();
+        explored = new long[(width * height + 63) >> 6];
+        rowMin = new int[height];
+        rowMax = new int[height];
+        dirtyRows = new int[height];
+        for (int y = 0; y < height; y++) {
+            rowMin[y] = Integer.MAX_VALUE;
+        }
+        staging = BufferUtils.createByteBuffer(width * 4).order(ByteOrder.BIG_ENDIAN);
+
+        id = glGenTextures();
+        glBindTexture(GL_TEXTURE_2D, id);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA8, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, (ByteBuffer) null);
+        //the initial contents are undefined, a row of black at a time keeps the staging small
+        for (int x = 0; x < width; x++) {
+            staging.putInt(UNEXPLORED);
+        }
+        staging.flip();
+        for (int y = 0; y < height; y++) {
+            glTexSubImage2D(GL_TEXTURE_2D, 0, 0, y, width, 1, GL_RGBA, GL_UNSIGNED_BYTE, staging);
+        }
+        glBindTexture(GL_TEXTURE_2D, 0);
+    }
+
+    public void destroy(){
+        glDeleteTextures(id);
+    }
+
+    private void markChanged(int x, int y){
+        if (rowMin[y] == Integer.MAX_VALUE) {
+            dirtyRows[dirtyRowCount++] = y;
+            rowMin[y] = x;
+            rowMax[y] = x + 1;
+        } else {
+            rowMin[y] = Math.min(rowMin[y], x);
+            rowMax[y] = Math.max(rowMax[y], x + 1);
+        }
+    }
+
+    //A tile's id changed, only explored tiles need a new texel
+    public void tileChanged(int x, int y, int newId){
+        int i = x + y * width;
+        ids[i] = (byte) newId;
+        if ((explored[i >> 6] & 1L << i) != 0) {
+            markChanged(x, y);
+        }
+    }
+
+    //Marks tiles whose explored bit differs from bits, null for everything explored. Skipped while
+    //version is the one last compared
+    public void updateExplored(long[] bits, long version){
+        if (version == exploredVersion) {
+            return;
+        }
+        exploredVersion = version;
+        int tiles = width * height;
+        for (int word = 0; word < explored.length; word++) {
+            long now = bits != null ? bits[word] : -1L;
+            long changed = now ^ explored[word];
+            explored[word] = now;
+            while (changed != 0) {
+                int i = (word << 6) + Long.numberOfTrailingZeros(changed);
+                changed &= changed - 1;
+                if (i < tiles) {
+                    markChanged(i % width, i / width);
+                }
+            }
+        }
+    }
+
+    //Uploads the changed span of every row with changes
+    public void flush(){
+        if (dirtyRowCount == 0) {
+            return;
+        }
+        glBindTexture(GL_TEXTURE_2D, id);
+        for (int r = 0; r < dirtyRowCount; r++) {
+            int y = dirtyRows[r];
+            staging.clear();
+            for (int x = rowMin[y]; x < rowMax[y]; x++) {
+                staging.putInt(texel(x + y * width));
+            }
+            staging.flip();
+            glTexSubImage2D(GL_TEXTURE_2D, 0, rowMin[y], y, rowMax[y] - rowMin[y], 1, GL_RGBA, GL_UNSIGNED_BYTE, staging);
+            RenderStats.uploadedBytes += staging.remaining();
+            rowMin[y] = Integer.MAX_VALUE;
+        }
+        RenderStats.bufferUploads += dirtyRowCount;
+        dirtyRowCount = 0;
+        glBindTexture(GL_TEXTURE_2D, 0);
+    }
+
+    private int texel(int i){
+        if ((explored[i >> 6] & 1L << i) == 0) {
+            return UNEXPLORED;
+        }
+        int tile = ids[i];
+        return tile >= 0 && tile < COLORS.length ? COLORS[tile] : UNEXPLORED;
+    }
+
+    public void beginDots(){
+        dots.clear();
+        dotColors.clear();
+        dotCount = 0;
+    }
+
+    //Queues a dot at a world position given in tiles, color as RGBA
+    public void addDot(float tileX, float tileY, int color){
+        if (!dots.hasRemaining()) {
+            FloatBuffer largerDots = BufferUtils.createFloatBuffer(dots.capacity() * 2);
+            ByteBuffer largerColors = BufferUtils.createByteBuffer(dotColors.capacity() * 2).order(ByteOrder.BIG_ENDIAN);
+            dots.flip();
+            dotColors.flip();
+            dots = largerDots.put(dots);
+            dotColors = largerColors.put(dotColors);
+        }
+        dots.put(tileX).put(tileY);
+        dotColors.putInt(color);
+        dotCount++;
+    }
+
+    //Draws the map into the window rectangle (x, y, w, h), then the queued dots and the camera frame,
+    //given as a tile rectangle. The projection has to be in window coordinates
+    public void draw(int x, int y, int w, int h, float frameX0, float frameY0, float frameX1, float frameY1){
+        //tile row 0 is the bottom of the map, window y grows downwards
+        glPushMatrix();
+        glTranslatef(x, y + h, 0);
+        glScalef((float) w / width, -(float) h / height, 1);
+
+        glEnable(GL_TEXTURE_2D);
+        glBindTexture(GL_TEXTURE_2D, id);
+        RenderStats.textureBinds++;
+        glColor4f(1, 1, 1, 1);
+        glBegin(GL_QUADS);
+        glTexCoord2f(0, 0);
+        glVertex2f(0, 0);
+        glTexCoord2f(1, 0);
+        glVertex2f(width, 0);
+        glTexCoord2f(1, 1);
+        glVertex2f(width, height);
+        glTexCoord2f(0, 1);
+        glVertex2f(0, height);
+        glEnd();
+        RenderStats.drawCalls++;
+        glDisable(GL_TEXTURE_2D);
+
+        if (dotCount > 0) {
+            dots.flip();
+            dotColors.flip();
+            glPointSize(2);
+            glEnableClientState(GL_VERTEX_ARRAY);
+            glEnableClientState(GL_COLOR_ARRAY);
+            glVertexPointer(2, GL_FLOAT, 0, dots);
+            glColorPointer(4, GL_UNSIGNED_BYTE, 0, dotColors);
+            glDrawArrays(GL_POINTS, 0, dotCount);
+            glDisableClientState(GL_COLOR_ARRAY);
+            glDisableClientState(GL_VERTEX_ARRAY);
+            glPointSize(1);
+            RenderStats.drawCalls++;
+        }
+
+        glColor4f(1, 1, 1, 1);
+        glBegin(GL_LINE_LOOP);
+        glVertex2f(frameX0, frameY0);
+        glVertex2f(frameX1, frameY0);
+        glVertex2f(frameX1, frameY1);
+        glVertex2f(frameX0, frameY1);
+        glEnd();
+        glPopMatrix();
+        glEnable(GL_TEXTURE_2D);
+    }
+}
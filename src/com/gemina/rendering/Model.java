@@ -49,12 +49,16 @@ public class Model {
     public void setTextureCoords(double[] textureCoords){
         glBindBuffer(GL_ARRAY_BUFFER, t_id);
         glBufferSubData(GL_ARRAY_BUFFER, 0, textureCoords);
+        RenderStats.bufferUploads++;
+        RenderStats.uploadedBytes += textureCoords.length * Double.BYTES;
     }
 
     public void render(double[] vertices) {
 
         glBindBuffer(GL_ARRAY_BUFFER, v_id);
         glBufferSubData(GL_ARRAY_BUFFER, 0, vertices);
+        RenderStats.bufferUploads++;
+        RenderStats.uploadedBytes += vertices.length * Double.BYTES;
 
         glEnableClientState(GL_VERTEX_ARRAY);
         glEnableClientState(GL_TEXTURE_COORD_ARRAY);
@@ -67,6 +71,7 @@ public class Model {
 
         glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, i_id);
         glDrawElements(GL_TRIANGLES, draw_count, GL_UNSIGNED_INT, 0);
+        RenderStats.drawCalls++;
 
         glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
         glBindBuffer(GL_ARRAY_BUFFER, 0);
@@ -81,6 +86,8 @@ public class Model {
 
         glBindBuffer(GL_ARRAY_BUFFER, v_id);
         glBufferSubData(GL_ARRAY_BUFFER, 0, vertices);
+        RenderStats.bufferUploads++;
+        RenderStats.uploadedBytes += vertices.length * Double.BYTES;
 
         glEnableClientState(GL_VERTEX_ARRAY);
         glEnableClientState(GL_TEXTURE_COORD_ARRAY);
@@ -93,6 +100,7 @@ public class Model {
 
         glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, i_id);
         glDrawElements(GL_TRIANGLES, draw_count, GL_UNSIGNED_INT, 0);
+        RenderStats.drawCalls++;
 
         glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
         glBindBuffer(GL_ARRAY_BUFFER, 0);
@@ -0,0 +1,41 @@
+package com.gemina.rendering;
+
+//Per frame counters of the GL work issued by the rendering classes
+public class RenderStats {
+
+    static int drawCalls;
+    static int textureBinds;
+    static int bufferUploads;
+    static long uploadedBytes;
+    //sprites drawn through instancing, not counted as draw calls
+    static int instances;
+
+    //Clears the counters, called at the start of every frame
+    public static void reset(){
+        drawCalls = 0;
+        textureBinds = 0;
+        bufferUploads = 0;
+        uploadedBytes = 0;
+        instances = 0;
+    }
+
+    public static int getDrawCalls(){
+        return drawCalls;
+    }
+
+    public static int getTextureBinds(){
+        return textureBinds;
+    }
+
+    public static int getBufferUploads(){
+        return bufferUploads;
+    }
+
+    public static long getUploadedBytes(){
+        return uploadedBytes;
+    }
+
+    public static int getInstances(){
+        return instances;
+    }
+}
@@ -0,0 +1,83 @@
+package com.gemina.rendering;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+
+import static org.lwjgl.opengl.GL11.GL_FALSE;
+import static org.lwjgl.opengl.GL20.*;
+
+//GLSL program built from a vertex and fragment shader in res/shaders
+public class Shader {
+
+    private int id;
+    private HashMap<String, Integer> uniforms = new HashMap<>();
+
+    public Shader(String name){
+        int vertex = compile(GL_VERTEX_SHADER, name + ".vert");
+        int fragment = compile(GL_FRAGMENT_SHADER, name + ".frag");
+
+        id = glCreateProgram();
+        glAttachShader(id, vertex);
+        glAttachShader(id, fragment);
+        glLinkProgram(id);
+        if (glGetProgrami(id, GL_LINK_STATUS) == GL_FALSE)
+            throw new IllegalStateException("Failed to link shader " + name + ": " + glGetProgramInfoLog(id));
+
+        glDetachShader(id, vertex);
+        glDetachShader(id, fragment);
+        glDeleteShader(vertex);
+        glDeleteShader(fragment);
+    }
+
+    private static int compile(int type, String filename){
+        String source;
+        try {
+            source = new String(Files.readAllBytes(Paths.get("./res/shaders/" + filename)), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read shader " + filename, e);
+        }
+        int shader = glCreateShader(type);
+        glShaderSource(shader, source);
+        glCompileShader(shader);
+        if (glGetShaderi(shader, GL_COMPILE_STATUS) == GL_FALSE)
+            throw new IllegalStateException("Failed to compile shader " + filename + ": " + glGetShaderInfoLog(shader));
+        return shader;
+    }
+
+    public void destroy(){
+        glDeleteProgram(id);
+    }
+
+    public void bind(){
+        glUseProgram(id);
+    }
+
+    public void unbind(){
+        glUseProgram(0);
+    }
+
+    //Uniform locations are looked up once and cached
+    private int getUniform(String name){
+        Integer location = uniforms.get(name);
+        if (location == null) {
+            location = glGetUniformLocation(id, name);
+            uniforms.put(name, location);
+        }
+        return location;
+    }
+
+    public void setUniform(String name, int value){
+        glUniform1i(getUniform(name), value);
+    }
+
+    public void setUniform(String name, float x, float y){
+        glUniform2f(getUniform(name), x, y);
+    }
+
+    public void setUniform(String name, float x, float y, float z, float w){
+        glUniform4f(getUniform(name), x, y, z, w);
+    }
+}
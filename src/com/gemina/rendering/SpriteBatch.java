@@ -0,0 +1,132 @@
+package com.gemina.rendering;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL31.glDrawArraysInstanced;
+import static org.lwjgl.opengl.GL33.glVertexAttribDivisor;
+
+import java.nio.FloatBuffer;
+
+import org.lwjgl.BufferUtils;
+
+//Instanced sprites of one size drawn through the sprite shader. Sprites are queued in groups that
+//share an atlas region, e.g. all units of one owner, and every group is drawn with a single call.
+//Each instance is only its center, two floats, streamed once per frame.
+public class SpriteBatch {
+
+    public static final int MAX_GROUPS = 8;
+
+    private int vao_id;
+    private int corner_id;
+    private int instance_id;
+    private int capacity;
+
+    private FloatBuffer staging;
+    private final int[] groupStart = new int[MAX_GROUPS];
+    private final int[] groupCount = new int[MAX_GROUPS];
+    private final float[] groupRegion = new float[MAX_GROUPS * 4];
+    private int groups;
+    private int count;
+
+    public SpriteBatch(int capacity){
+        this.capacity = Math.max(1, capacity);
+        staging = BufferUtils.createFloatBuffer(this.capacity * 2);
+
+        vao_id = glGenVertexArrays();
+        glBindVertexArray(vao_id);
+
+        //the shared quad, same corner order as Model
+        corner_id = glGenBuffers();
+        glBindBuffer(GL_ARRAY_BUFFER, corner_id);
+        glBufferData(GL_ARRAY_BUFFER, new float[]{0, 0, 0, 1, 1, 0, 1, 1}, GL_STATIC_DRAW);
+        glEnableVertexAttribArray(0);
+        glVertexAttribPointer(0, 2, GL_FLOAT, false, 0, 0);
+
+        instance_id = glGenBuffers();
+        glBindBuffer(GL_ARRAY_BUFFER, instance_id);
+        glEnableVertexAttribArray(1);
+        glVertexAttribDivisor(1, 1);
+
+        glBindVertexArray(0);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    public void destroy(){
+        glDeleteVertexArrays(vao_id);
+        glDeleteBuffers(corner_id);
+        glDeleteBuffers(instance_id);
+    }
+
+    public void begin(){
+        staging.clear();
+        groups = 0;
+        count = 0;
+    }
+
+    //Starts a group drawn with the atlas region (u1, v1) - (u2, v2), v1 being the top of the image
+    public void beginGroup(float u1, float v1, float u2, float v2){
+        if (groups == MAX_GROUPS)
+            throw new IllegalStateException("A sprite batch holds at most " + MAX_GROUPS + " groups");
+        groupStart[groups] = count;
+        groupCount[groups] = 0;
+        groupRegion[groups * 4] = u1;
+        groupRegion[groups * 4 + 1] = v1;
+        groupRegion[groups * 4 + 2] = u2;
+        groupRegion[groups * 4 + 3] = v2;
+        groups++;
+    }
+
+    //Queues a sprite centered on (x, y) in world units into the current group
+    public void add(float x, float y){
+        if (count == capacity) {
+            grow();
+        }
+        staging.put(x).put(y);
+        groupCount[groups - 1]++;
+        count++;
+    }
+
+    private void grow(){
+        capacity *= 2;
+        FloatBuffer larger = BufferUtils.createFloatBuffer(capacity * 2);
+        staging.flip();
+        larger.put(staging);
+        staging = larger;
+    }
+
+    public void end(){
+        staging.flip();
+        glBindBuffer(GL_ARRAY_BUFFER, instance_id);
+        //orphans last frame's storage so the upload does not wait for draws still reading it
+        glBufferData(GL_ARRAY_BUFFER, (long) capacity * 2 * Float.BYTES, GL_STREAM_DRAW);
+        RenderStats.uploadedBytes += staging.remaining() * Float.BYTES;
+        glBufferSubData(GL_ARRAY_BUFFER, 0, staging);
+        RenderStats.bufferUploads++;
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    //The sprite shader has to be bound with its view, size and atlas uniforms set
+    public void draw(Shader shader){
+        glBindVertexArray(vao_id);
+        glBindBuffer(GL_ARRAY_BUFFER, instance_id);
+        for (int g = 0; g < groups; g++) {
+            if (groupCount[g] == 0) {
+                continue;
+            }
+            shader.setUniform("region", groupRegion[g * 4], groupRegion[g * 4 + 1], groupRegion[g * 4 + 2], groupRegion[g * 4 + 3]);
+            //GL 3.3 has no base instance, so the group's instances are selected by the attribute offset
+            glVertexAttribPointer(1, 2, GL_FLOAT, false, 0, (long) groupStart[g] * 2 * Float.BYTES);
+            glDrawArraysInstanced(GL_TRIANGLE_STRIP, 0, 4, groupCount[g]);
+            RenderStats.drawCalls++;
+            RenderStats.instances += groupCount[g];
+        }
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glBindVertexArray(0);
+    }
+
+    public int size(){
+        return count;
+    }
+}
@@ -37,6 +37,7 @@ public class Texture {
 
     public void bind(){
         glBindTexture(GL_TEXTURE_2D, id);
+        RenderStats.textureBinds++;
     }
 
 }
\ No newline at end of file
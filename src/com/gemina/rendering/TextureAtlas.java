@@ -0,0 +1,171 @@
+package com.gemina.rendering;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.GL_CLAMP_TO_EDGE;
+
+//Packs images of a folder into one GL texture so a whole frame can be drawn with a single bind.
+//Each file is decoded once by the asset loader's workers and uploaded once, no matter how many sprites
+//reference it. Must be built on the GL context thread.
+public class TextureAtlas {
+
+    //space left between images so nearest filtering never samples a neighbour
+    private static final int PADDING = 1;
+
+    private int id;
+    private int width;
+    private int height;
+
+    private HashMap<String, Integer> regions = new HashMap<>();
+    //u1, v1, u2, v2 for every region, v1 being the top of the image
+    private float[] uvs;
+
+    //Packs the named files of the loader's folder, duplicates are packed once
+    public TextureAtlas(AssetLoader loader, List<String> files){
+        List<String> names = new ArrayList<>(new LinkedHashSet<>(files));
+        //sizes come from the file headers, so the layout is known while the pixels still decode
+        List<int[]> sizes = new ArrayList<>();
+        for (String name : names) {
+            sizes.add(loader.getSize(name));
+        }
+        List<CompletableFuture<AssetLoader.Image>> pending = loader.requestAll(names);
+
+        int[][] positions = pack(sizes);
+
+        id = glGenTextures();
+        glBindTexture(GL_TEXTURE_2D, id);
+        glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+        glTexParameterf(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, (ByteBuffer) null);
+
+        uvs = new float[names.size() * 4];
+        for (int i = 0; i < names.size(); i++) {
+            int[] size = sizes.get(i);
+            int[] pos = positions[i];
+            uvs[i * 4] = (float) pos[0] / width;
+            uvs[i * 4 + 1] = (float) pos[1] / height;
+            uvs[i * 4 + 2] = (float) (pos[0] + size[0]) / width;
+            uvs[i * 4 + 3] = (float) (pos[1] + size[1]) / height;
+            regions.put(names.get(i), i);
+        }
+
+        //upload each image on this thread as soon as its worker is done with it
+        boolean[] uploaded = new boolean[names.size()];
+        int remaining = names.size();
+        while (true) {
+            for (int i = 0; i < names.size(); i++) {
+                if (uploaded[i] || !pending.get(i).isDone()) {
+                    continue;
+                }
+                AssetLoader.Image image = pending.get(i).join();
+                int[] pos = positions[i];
+                glTexSubImage2D(GL_TEXTURE_2D, 0, pos[0], pos[1], image.width, image.height, GL_RGBA, GL_UNSIGNED_BYTE, image.pixels);
+                loader.release(image);
+                uploaded[i] = true;
+                remaining--;
+            }
+            if (remaining == 0) {
+                break;
+            }
+            //waits on the images not uploaded yet, never an empty set since anyOf() would not complete
+            List<CompletableFuture<AssetLoader.Image>> waiting = new ArrayList<>();
+            for (int i = 0; i < names.size(); i++) {
+                if (!uploaded[i]) {
+                    waiting.add(pending.get(i));
+                }
+            }
+            CompletableFuture.anyOf(waiting.toArray(new CompletableFuture<?>[0])).join();
+        }
+    }
+
+    //Shelf packing: tallest images first, rows filled left to right, the atlas grows in height
+    private int[][] pack(List<int[]> sizes){
+        Integer[] order = new Integer[sizes.size()];
+        int area = 0;
+        int widest = 0;
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+            area += (sizes.get(i)[0] + PADDING) * (sizes.get(i)[1] + PADDING);
+            widest = Math.max(widest, sizes.get(i)[0] + PADDING);
+        }
+        Arrays.sort(order, (a, b) -> sizes.get(b)[1] - sizes.get(a)[1]);
+
+        width = nextPowerOfTwo(Math.max(widest, (int) Math.ceil(Math.sqrt(area))));
+        int[][] positions = new int[order.length][];
+        int x = 0;
+        int y = 0;
+        int rowHeight = 0;
+        for (int i : order) {
+            int[] size = sizes.get(i);
+            if (x + size[0] > width) {
+                x = 0;
+                y += rowHeight + PADDING;
+                rowHeight = 0;
+            }
+            positions[i] = new int[]{x, y};
+            x += size[0] + PADDING;
+            rowHeight = Math.max(rowHeight, size[1]);
+        }
+        height = nextPowerOfTwo(y + rowHeight);
+        return positions;
+    }
+
+    private static int nextPowerOfTwo(int value){
+        int result = 1;
+        while (result < value) {
+            result <<= 1;
+        }
+        return result;
+    }
+
+    public void destroy(){
+        glDeleteTextures(id);
+    }
+
+    public void bind(){
+        glBindTexture(GL_TEXTURE_2D, id);
+        RenderStats.textureBinds++;
+    }
+
+    //Region index of a file name in the atlas, -1 if the file was not packed
+    public int getRegion(String filename){
+        Integer region = regions.get(filename);
+        return region == null ? -1 : region;
+    }
+
+    public int getRegionCount(){
+        return uvs.length / 4;
+    }
+
+    public float getU1(int region){
+        return uvs[region * 4];
+    }
+
+    public float getV1(int region){
+        return uvs[region * 4 + 1];
+    }
+
+    public float getU2(int region){
+        return uvs[region * 4 + 2];
+    }
+
+    public float getV2(int region){
+        return uvs[region * 4 + 3];
+    }
+
+    public int getWidth(){
+        return width;
+    }
+
+    public int getHeight(){
+        return height;
+    }
+}
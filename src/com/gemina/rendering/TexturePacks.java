@@ -0,0 +1,141 @@
+package com.gemina.rendering;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.GL_CLAMP_TO_EDGE;
+import static org.lwjgl.opengl.GL12.glTexImage3D;
+import static org.lwjgl.opengl.GL12.glTexSubImage3D;
+import static org.lwjgl.opengl.GL30.GL_TEXTURE_2D_ARRAY;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.lwjgl.BufferUtils;
+
+//One GL_TEXTURE_2D_ARRAY per texture pack with a layer per tile id, so a chunk mesh only stores tile ids
+//and fits every pack: switching packs is one bind instead of rebuilding the meshes. All layers share the
+//size of the largest tile image, smaller images are scaled up with nearest sampling on the loader's
+//workers. Layers of ids without an image stay transparent. Must be built and used on the GL context thread.
+public class TexturePacks {
+
+    //image of each tile id, one row per pack
+    private final String[][] names;
+    private final int[] array_ids;
+    private final int layerSize;
+
+    public TexturePacks(AssetLoader loader, String[][] names){
+        this.names = names;
+        //sizes come from the file headers, so the arrays are allocated while the pixels still decode
+        Map<String, CompletableFuture<ByteBuffer>> pending = new LinkedHashMap<>();
+        int size = 1;
+        for (String[] pack : names) {
+            for (String name : pack) {
+                if (name != null && !pending.containsKey(name)) {
+                    int[] imageSize = loader.getSize(name);
+                    size = Math.max(size, Math.max(imageSize[0], imageSize[1]));
+                    pending.put(name, null);
+                }
+            }
+        }
+        layerSize = size;
+        for (String name : pending.keySet()) {
+            pending.put(name, fit(loader, loader.request(name)));
+        }
+
+        ByteBuffer empty = BufferUtils.createByteBuffer(layerSize * layerSize * 4);
+        array_ids = new int[names.length];
+        for (int pack = 0; pack < names.length; pack++) {
+            array_ids[pack] = glGenTextures();
+            glBindTexture(GL_TEXTURE_2D_ARRAY, array_ids[pack]);
+            glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+            glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+            glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+            glTexParameteri(GL_TEXTURE_2D_ARRAY, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+            glTexImage3D(GL_TEXTURE_2D_ARRAY, 0, GL_RGBA8, layerSize, layerSize, names[pack].length, 0,
+                    GL_RGBA, GL_UNSIGNED_BYTE, (ByteBuffer) null);
+            for (int id = 0; id < names[pack].length; id++) {
+                if (names[pack][id] == null) {
+                    glTexSubImage3D(GL_TEXTURE_2D_ARRAY, 0, 0, 0, id, layerSize, layerSize, 1, GL_RGBA, GL_UNSIGNED_BYTE, empty);
+                }
+            }
+        }
+        for (Map.Entry<String, CompletableFuture<ByteBuffer>> entry : pending.entrySet()) {
+            upload(entry.getKey(), entry.getValue().join());
+        }
+        glBindTexture(GL_TEXTURE_2D_ARRAY, 0);
+    }
+
+    public void destroy(){
+        for (int id : array_ids) {
+            glDeleteTextures(id);
+        }
+    }
+
+    //Binds a pack's array to the active texture unit, pack counts from 1 like in map files
+    public void bind(int pack){
+        glBindTexture(GL_TEXTURE_2D_ARRAY, array_ids[pack - 1]);
+        RenderStats.textureBinds++;
+    }
+
+    public int getPackCount(){
+        return names.length;
+    }
+
+    //Layer of a tile id, the same in every pack, -1 when no pack has an image for it
+    public int getLayer(int id){
+        for (String[] pack : names) {
+            if (id >= 0 && id < pack.length && pack[id] != null) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    //Whether any pack has a layer showing the file
+    public boolean uses(String name){
+        for (String[] pack : names) {
+            for (String used : pack) {
+                if (name.equals(used)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    //Turns a decode into layer sized pixels on the thread finishing it, the decoded image is released
+    //once copied. Safe to call from any thread
+    public CompletableFuture<ByteBuffer> fit(AssetLoader loader, CompletableFuture<AssetLoader.Image> decode){
+        return decode.thenApply(image -> {
+            //texels are copied as ints, the same byte order on both sides keeps them RGBA
+            ByteBuffer pixels = BufferUtils.createByteBuffer(layerSize * layerSize * 4).order(image.pixels.order());
+            for (int y = 0; y < layerSize; y++) {
+                int row = y * image.height / layerSize * image.width;
+                for (int x = 0; x < layerSize; x++) {
+                    pixels.putInt(image.pixels.getInt((row + x * image.width / layerSize) * 4));
+                }
+            }
+            pixels.flip();
+            loader.release(image);
+            return pixels;
+        });
+    }
+
+    //Uploads layer sized pixels of a file into every layer showing it, returns the layers written
+    public int upload(String name, ByteBuffer pixels){
+        int layers = 0;
+        for (int pack = 0; pack < names.length; pack++) {
+            for (int id = 0; id < names[pack].length; id++) {
+                if (name.equals(names[pack][id])) {
+                    glBindTexture(GL_TEXTURE_2D_ARRAY, array_ids[pack]);
+                    glTexSubImage3D(GL_TEXTURE_2D_ARRAY, 0, 0, 0, id, layerSize, layerSize, 1, GL_RGBA, GL_UNSIGNED_BYTE, pixels);
+                    RenderStats.bufferUploads++;
+                    RenderStats.uploadedBytes += pixels.remaining();
+                    layers++;
+                }
+            }
+        }
+        return layers;
+    }
+}
@@ -0,0 +1,96 @@
+package com.gemina.rendering;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+//Reloads tile images edited while the game runs. A thread waits on a WatchService for changed pngs of
+//the asset folder and has only those decoded again by the asset loader's workers; poll then uploads the
+//finished ones into their layers of the texture packs, the rest of the packs is left alone.
+public class TextureWatcher implements Closeable {
+
+    private static class Reload {
+        final String name;
+        final CompletableFuture<ByteBuffer> pixels;
+
+        Reload(String name, CompletableFuture<ByteBuffer> pixels){
+            this.name = name;
+            this.pixels = pixels;
+        }
+    }
+
+    private final AssetLoader loader;
+    private final TexturePacks packs;
+    private final WatchService service;
+    private final Thread thread;
+    //decodes in the order the changes were seen, so the latest edit of a file is uploaded last
+    private final ConcurrentLinkedQueue<Reload> pending = new ConcurrentLinkedQueue<>();
+
+    public TextureWatcher(Path folder, AssetLoader loader, TexturePacks packs) throws IOException {
+        this.loader = loader;
+        this.packs = packs;
+        service = FileSystems.getDefault().newWatchService();
+        folder.register(service, ENTRY_CREATE, ENTRY_MODIFY);
+        thread = new Thread(this::watch, "texture-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void watch(){
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW) {
+                        continue;
+                    }
+                    String name = ((Path) event.context()).getFileName().toString();
+                    if (name.endsWith(".png") && packs.uses(name)) {
+                        loader.invalidate(name);
+                        pending.add(new Reload(name, packs.fit(loader, loader.request(name))));
+                    }
+                }
+                key.reset();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            //closed
+        }
+    }
+
+    //Uploads every reload decoded by now, returns the layers written. Context thread only
+    public int poll(){
+        int layers = 0;
+        Reload reload;
+        while ((reload = pending.peek()) != null && reload.pixels.isDone()) {
+            pending.poll();
+            try {
+                layers += packs.upload(reload.name, reload.pixels.join());
+            } catch (CompletionException e) {
+                //editors often save in several writes, the event of the last one reloads the full file
+                System.err.println("Failed to reload " + reload.name + ": " + e.getCause().getMessage());
+            }
+        }
+        return layers;
+    }
+
+    @Override
+    public void close() throws IOException {
+        service.close();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
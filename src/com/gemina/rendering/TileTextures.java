@@ -0,0 +1,94 @@
+package com.gemina.rendering;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+//Images of the tile ids and unit owners. Tiles are drawn from one texture array per pack, units from
+//the atlas. The map model only knows ids, this is where they get a look. Needs a current GL context to load.
+public class TileTextures {
+
+    //image used by each tile id, one row per texture pack
+    static final String[][] textureNames = {
+            {null, "road.png", "grass.png", "tree.png", "tower_neutral.png", "tower_red.png", "tower_blue.png"},
+            {null, "road.png", "forest.png", "rock.png", "tower_neutral.png", "tower_red.png", "tower_blue.png"}
+    };
+
+    //unit image of each owner: neutral, red, blue
+    static final String[] unitTextureNames = {null, "redunit.png", "blueunit.png"};
+
+    //kept running after loading so edited tile images can be decoded again
+    static AssetLoader loader;
+    //the unit images, tiles are drawn from the packs
+    static TextureAtlas atlas;
+    static TexturePacks packs;
+    //null when the platform can not watch res/, tile images are then only read at startup
+    static TextureWatcher watcher;
+    //atlas region of each owner's units, -1 for owners without an image
+    static int[] unitRegions;
+
+    //Builds the texture packs and the atlas and starts watching res/ for edited tile images
+    public static void load(){
+        loader = new AssetLoader("./res");
+        loader.setCacheFolder("./cache");
+        packs = new TexturePacks(loader, textureNames);
+        List<String> unitFiles = new ArrayList<>();
+        for (String name : unitTextureNames) {
+            if (name != null) {
+                unitFiles.add(name);
+            }
+        }
+        atlas = new TextureAtlas(loader, unitFiles);
+        unitRegions = new int[unitTextureNames.length];
+        for (int owner = 0; owner < unitTextureNames.length; owner++) {
+            unitRegions[owner] = unitTextureNames[owner] == null ? -1 : atlas.getRegion(unitTextureNames[owner]);
+        }
+        try {
+            watcher = new TextureWatcher(Paths.get("./res"), loader, packs);
+        } catch (IOException e) {
+            System.err.println("Texture reloading is off, res/ can not be watched: " + e.getMessage());
+        }
+    }
+
+    //Stops watching res/ and the loader's workers
+    public static void unload(){
+        if (watcher != null) {
+            try {
+                watcher.close();
+            } catch (IOException e) {
+                System.err.println("Failed to stop watching res/: " + e.getMessage());
+            }
+            watcher = null;
+        }
+        loader.shutdown();
+    }
+
+    //Uploads tile images edited since the last call, returns the layers replaced. Context thread only
+    public static int pollReloads(){
+        return watcher == null ? 0 : watcher.poll();
+    }
+
+    public static TextureAtlas getAtlas(){
+        return atlas;
+    }
+
+    //Binds the texture array of a pack, counted from 1, to the active texture unit
+    public static void bindPack(int pack){
+        packs.bind(pack);
+    }
+
+    public static int getPackCount(){
+        return textureNames.length;
+    }
+
+    //Texture array layer of a tile id in every pack, -1 for ids without an image
+    public static int getLayer(int id){
+        return packs.getLayer(id);
+    }
+
+    //Atlas region of the units of an owner, -1 when it has none
+    public static int getUnitRegion(int owner){
+        return owner < 0 || owner >= unitRegions.length ? -1 : unitRegions[owner];
+    }
+}
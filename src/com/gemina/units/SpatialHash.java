@@ -0,0 +1,207 @@
+package com.gemina.units;
+
+import java.util.Arrays;
+
+//Uniform grid over the world for "what is here" queries on units. Each unit handle sits in the cell
+//holding its position, cells are intrusive doubly linked lists in int arrays so inserting, moving and
+//removing are O(1) and nothing is allocated after the arrays have grown to the unit count.
+//Queries only visit the cells overlapping the query area. Results stay readable with getResult until
+//the next query. Not thread safe.
+public class SpatialHash {
+
+    private static final int EMPTY = -1;
+
+    private final double cellSize;
+    private final int cellsX;
+    private final int cellsY;
+    private final int[] cellHead;
+
+    //per handle, cell is EMPTY for handles not in the hash
+    private int[] cell = new int[0];
+    private int[] next = new int[0];
+    private int[] previous = new int[0];
+    private double[] xs = new double[0];
+    private double[] ys = new double[0];
+    private int size;
+
+    private int[] results = new int[64];
+    private int resultCount;
+
+    //Grid covering worldWidth by worldHeight, positions outside it are kept in the border cells
+    public SpatialHash(double worldWidth, double worldHeight, double cellSize){
+        this.cellSize = cellSize;
+        cellsX = Math.max(1, (int) Math.ceil(worldWidth / cellSize));
+        cellsY = Math.max(1, (int) Math.ceil(worldHeight / cellSize));
+        cellHead = new int[cellsX * cellsY];
+        Arrays.fill(cellHead, EMPTY);
+    }
+
+    private int cellX(double x){
+        return Math.min(Math.max((int) Math.floor(x / cellSize), 0), cellsX - 1);
+    }
+
+    private int cellY(double y){
+        return Math.min(Math.max((int) Math.floor(y / cellSize), 0), cellsY - 1);
+    }
+
+    private void ensureCapacity(int handle){
+        if (handle < cell.length) {
+            return;
+        }
+        int capacity = Math.max(handle + 1, cell.length * 2);
+        int old = cell.length;
+        cell = Arrays.copyOf(cell, capacity);
+        Arrays.fill(cell, old, capacity, EMPTY);
+        next = Arrays.copyOf(next, capacity);
+        previous = Arrays.copyOf(previous, capacity);
+        xs = Arrays.copyOf(xs, capacity);
+        ys = Arrays.copyOf(ys, capacity);
+    }
+
+    private void link(int handle, int target){
+        previous[handle] = EMPTY;
+        next[handle] = cellHead[target];
+        if (cellHead[target] != EMPTY) {
+            previous[cellHead[target]] = handle;
+        }
+        cellHead[target] = handle;
+        cell[handle] = target;
+    }
+
+    private void unlink(int handle){
+        int current = cell[handle];
+        if (previous[handle] != EMPTY) {
+            next[previous[handle]] = next[handle];
+        } else {
+            cellHead[current] = next[handle];
+        }
+        if (next[handle] != EMPTY) {
+            previous[next[handle]] = previous[handle];
+        }
+        cell[handle] = EMPTY;
+    }
+
+    public void insert(int handle, double x, double y){
+        ensureCapacity(handle);
+        if (cell[handle] != EMPTY)
+            throw new IllegalStateException("Unit " + handle + " is already in the hash");
+        xs[handle] = x;
+        ys[handle] = y;
+        link(handle, cellX(x) + cellY(y) * cellsX);
+        size++;
+    }
+
+    //Updates a position, only relinks when the unit crosses into another cell
+    public void move(int handle, double x, double y){
+        if (!contains(handle))
+            throw new IllegalStateException("Unit " + handle + " is not in the hash");
+        xs[handle] = x;
+        ys[handle] = y;
+        int target = cellX(x) + cellY(y) * cellsX;
+        if (target != cell[handle]) {
+            unlink(handle);
+            link(handle, target);
+        }
+    }
+
+    public void remove(int handle){
+        if (contains(handle)) {
+            unlink(handle);
+            size--;
+        }
+    }
+
+    public void clear(){
+        Arrays.fill(cellHead, EMPTY);
+        Arrays.fill(cell, EMPTY);
+        size = 0;
+    }
+
+    public boolean contains(int handle){
+        return handle >= 0 && handle < cell.length && cell[handle] != EMPTY;
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public double getX(int handle){
+        return xs[handle];
+    }
+
+    public double getY(int handle){
+        return ys[handle];
+    }
+
+    private void addResult(int handle){
+        if (resultCount == results.length) {
+            results = Arrays.copyOf(results, results.length * 2);
+        }
+        results[resultCount++] = handle;
+    }
+
+    //Units with a position inside the rectangle, corners in any order. Returns the count, read them with getResult
+    public int queryRect(double x1, double y1, double x2, double y2){
+        double left = Math.min(x1, x2);
+        double right = Math.max(x1, x2);
+        double top = Math.min(y1, y2);
+        double bottom = Math.max(y1, y2);
+        resultCount = 0;
+        for (int cy = cellY(top); cy <= cellY(bottom); cy++) {
+            for (int cx = cellX(left); cx <= cellX(right); cx++) {
+                for (int h = cellHead[cx + cy * cellsX]; h != EMPTY; h = next[h]) {
+                    if (xs[h] >= left && xs[h] <= right && ys[h] >= top && ys[h] <= bottom) {
+                        addResult(h);
+                    }
+                }
+            }
+        }
+        return resultCount;
+    }
+
+    //Units within radius of a point. Returns the count, read them with getResult
+    public int queryRadius(double x, double y, double radius){
+        double radiusSquared = radius * radius;
+        resultCount = 0;
+        for (int cy = cellY(y - radius); cy <= cellY(y + radius); cy++) {
+            for (int cx = cellX(x - radius); cx <= cellX(x + radius); cx++) {
+                for (int h = cellHead[cx + cy * cellsX]; h != EMPTY; h = next[h]) {
+                    double dx = xs[h] - x;
+                    double dy = ys[h] - y;
+                    if (dx * dx + dy * dy <= radiusSquared) {
+                        addResult(h);
+                    }
+                }
+            }
+        }
+        return resultCount;
+    }
+
+    //Closest unit within radius of a point, -1 when there is none. Leaves the previous results untouched
+    public int queryPoint(double x, double y, double radius){
+        double best = radius * radius;
+        int closest = EMPTY;
+        for (int cy = cellY(y - radius); cy <= cellY(y + radius); cy++) {
+            for (int cx = cellX(x - radius); cx <= cellX(x + radius); cx++) {
+                for (int h = cellHead[cx + cy * cellsX]; h != EMPTY; h = next[h]) {
+                    double dx = xs[h] - x;
+                    double dy = ys[h] - y;
+                    double distance = dx * dx + dy * dy;
+                    if (distance <= best) {
+                        best = distance;
+                        closest = h;
+                    }
+                }
+            }
+        }
+        return closest;
+    }
+
+    public int getResultCount(){
+        return resultCount;
+    }
+
+    public int getResult(int i){
+        return results[i];
+    }
+}
@@ -0,0 +1,91 @@
+package com.gemina.units;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+//Hands the drawable columns of a unit store from the simulation thread to the render thread.
+//Three frames rotate so the simulation always writes one the renderer is not reading; each frame's
+//arrays only grow, so after warm up publishing allocates nothing.
+public class UnitFrames {
+
+    //Positions and owners of every unit at one tick, with what the local player sees
+    public static class Frame {
+        public float[] x = new float[0];
+        public float[] y = new float[0];
+        public byte[] owner = new byte[0];
+        public int size;
+        public long tick;
+        //visibility bitsets of the local player, only copied when their version changed
+        public long[] visible = new long[0];
+        public long[] explored = new long[0];
+        public long fogVersion = -1;
+
+        void copyFrom(UnitStore units, long copyTick){
+            size = units.size();
+            tick = copyTick;
+            if (x.length < size) {
+                int capacity = Math.max(size, x.length * 2);
+                x = new float[capacity];
+                y = new float[capacity];
+                owner = new byte[capacity];
+            }
+            System.arraycopy(units.getXs(), 0, x, 0, size);
+            System.arraycopy(units.getYs(), 0, y, 0, size);
+            System.arraycopy(units.getOwners(), 0, owner, 0, size);
+        }
+
+        void copyFog(long[] fogVisible, long[] fogExplored, long version){
+            if (version == fogVersion && visible.length == fogVisible.length) {
+                return;
+            }
+            if (visible.length != fogVisible.length) {
+                visible = new long[fogVisible.length];
+                explored = new long[fogExplored.length];
+            }
+            System.arraycopy(fogVisible, 0, visible, 0, visible.length);
+            System.arraycopy(fogExplored, 0, explored, 0, explored.length);
+            fogVersion = version;
+        }
+    }
+
+    //set on the shared index when it holds a frame the renderer has not taken yet
+    private static final int FRESH = 4;
+
+    private final Frame[] frames = {new Frame(), new Frame(), new Frame()};
+    private int writing = 0;
+    private final AtomicInteger shared = new AtomicInteger(1);
+    private int reading = 2;
+
+    //Copies the store into a free frame and makes it the latest, simulation thread only
+    public void publish(UnitStore units, long tick){
+        frames[writing].copyFrom(units, tick);
+        swap();
+    }
+
+    //Same with the local player's visibility, the bitsets are copied only when version differs from the frame's
+    public void publish(UnitStore units, long[] visible, long[] explored, long fogVersion, long tick){
+        frames[writing].copyFrom(units, tick);
+        frames[writing].copyFog(visible, explored, fogVersion);
+        swap();
+    }
+
+    private void swap(){
+        writing = shared.getAndSet(writing | FRESH) & ~FRESH;
+    }
+
+    //Latest published frame, render thread only. Stays valid until the next call
+    public Frame acquire(){
+        if ((shared.get() & FRESH) != 0) {
+            reading = shared.getAndSet(reading) & ~FRESH;
+        }
+        return frames[reading];
+    }
+
+    //Forgets published frames, e.g. when a new map is loaded. Call while neither thread is using them
+    public void reset(){
+        for (Frame frame : frames) {
+            frame.size = 0;
+            frame.tick = 0;
+            frame.fogVersion = -1;
+        }
+    }
+}
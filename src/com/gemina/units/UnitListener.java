@@ -0,0 +1,11 @@
+package com.gemina.units;
+
+//Notified by a UnitStore when units appear, move or disappear. The unit can still be read during unitRemoved
+public interface UnitListener {
+
+    void unitAdded(int handle);
+
+    void unitMoved(int handle, float oldX, float oldY);
+
+    void unitRemoved(int handle);
+}
@@ -0,0 +1,235 @@
+package com.gemina.units;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+//Every unit of a match as parallel primitive columns indexed by slot. Slots 0..size-1 are all live, so
+//updates are tight loops over the columns. Callers keep handles instead of slots: a handle stays valid
+//until its unit is removed, while removing moves the last unit into the freed slot.
+//Optionally keeps a spatial hash in sync with the positions and notifies listeners, e.g. fog of war.
+//Not thread safe.
+public class UnitStore {
+
+    public static final int NEUTRAL = 0;
+    public static final int RED = 1;
+    public static final int BLUE = 2;
+    public static final int OWNERS = 3;
+
+    //per slot, positions are world coordinates of the unit's center
+    private float[] x;
+    private float[] y;
+    private byte[] owner;
+    private byte[] type;
+    private int[] movementLeft;
+    private int[] hp;
+    private int[] handleOf;
+    private int size;
+
+    //per handle, -1 for handles not in use
+    private int[] slotOf;
+    private int[] freeHandles;
+    private int freeCount;
+    private int handleCount;
+
+    private SpatialHash spatialHash;
+    private final List<UnitListener> listeners = new ArrayList<>();
+
+    public UnitStore(int capacity){
+        capacity = Math.max(1, capacity);
+        x = new float[capacity];
+        y = new float[capacity];
+        owner = new byte[capacity];
+        type = new byte[capacity];
+        movementLeft = new int[capacity];
+        hp = new int[capacity];
+        handleOf = new int[capacity];
+        slotOf = new int[capacity];
+        freeHandles = new int[capacity];
+    }
+
+    //Inserts every current unit into hash and keeps it updated on add, move and remove
+    public void setSpatialHash(SpatialHash hash){
+        spatialHash = hash;
+        if (hash != null) {
+            hash.clear();
+            for (int slot = 0; slot < size; slot++) {
+                hash.insert(handleOf[slot], x[slot], y[slot]);
+            }
+        }
+    }
+
+    public void addListener(UnitListener listener){
+        listeners.add(listener);
+    }
+
+    public void removeListener(UnitListener listener){
+        listeners.remove(listener);
+    }
+
+    private void grow(){
+        int capacity = x.length * 2;
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        owner = Arrays.copyOf(owner, capacity);
+        type = Arrays.copyOf(type, capacity);
+        movementLeft = Arrays.copyOf(movementLeft, capacity);
+        hp = Arrays.copyOf(hp, capacity);
+        handleOf = Arrays.copyOf(handleOf, capacity);
+        slotOf = Arrays.copyOf(slotOf, capacity);
+        freeHandles = Arrays.copyOf(freeHandles, capacity);
+    }
+
+    //Adds a unit and returns its handle, handles of removed units are reused
+    public int add(float unitX, float unitY, int unitOwner, int unitType, int unitHp, int movement){
+        if (size == x.length) {
+            grow();
+        }
+        int handle = freeCount > 0 ? freeHandles[--freeCount] : handleCount++;
+        int slot = size++;
+        x[slot] = unitX;
+        y[slot] = unitY;
+        owner[slot] = (byte) unitOwner;
+        type[slot] = (byte) unitType;
+        hp[slot] = unitHp;
+        movementLeft[slot] = movement;
+        handleOf[slot] = handle;
+        slotOf[handle] = slot;
+        if (spatialHash != null) {
+            spatialHash.insert(handle, unitX, unitY);
+        }
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).unitAdded(handle);
+        }
+        return handle;
+    }
+
+    //Removes a unit by moving the last slot into its place, only the moved unit's slot changes
+    public void remove(int handle){
+        int slot = getSlot(handle);
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).unitRemoved(handle);
+        }
+        int last = --size;
+        if (slot != last) {
+            x[slot] = x[last];
+            y[slot] = y[last];
+            owner[slot] = owner[last];
+            type[slot] = type[last];
+            hp[slot] = hp[last];
+            movementLeft[slot] = movementLeft[last];
+            handleOf[slot] = handleOf[last];
+            slotOf[handleOf[slot]] = slot;
+        }
+        slotOf[handle] = -1;
+        freeHandles[freeCount++] = handle;
+        if (spatialHash != null) {
+            spatialHash.remove(handle);
+        }
+    }
+
+    public void clear(){
+        for (int slot = 0; slot < size; slot++) {
+            for (int i = 0; i < listeners.size(); i++) {
+                listeners.get(i).unitRemoved(handleOf[slot]);
+            }
+            slotOf[handleOf[slot]] = -1;
+            freeHandles[freeCount++] = handleOf[slot];
+        }
+        size = 0;
+        if (spatialHash != null) {
+            spatialHash.clear();
+        }
+    }
+
+    public boolean isAlive(int handle){
+        return handle >= 0 && handle < handleCount && slotOf[handle] >= 0;
+    }
+
+    //Current slot of a handle, changes when another unit is removed
+    public int getSlot(int handle){
+        if (!isAlive(handle))
+            throw new IllegalStateException("Unit " + handle + " does not exist");
+        return slotOf[handle];
+    }
+
+    public int getHandle(int slot){
+        return handleOf[slot];
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public void setPosition(int handle, float unitX, float unitY){
+        int slot = getSlot(handle);
+        float oldX = x[slot];
+        float oldY = y[slot];
+        x[slot] = unitX;
+        y[slot] = unitY;
+        if (spatialHash != null) {
+            spatialHash.move(handle, unitX, unitY);
+        }
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).unitMoved(handle, oldX, oldY);
+        }
+    }
+
+    public float getX(int handle){
+        return x[getSlot(handle)];
+    }
+
+    public float getY(int handle){
+        return y[getSlot(handle)];
+    }
+
+    public int getOwner(int handle){
+        return owner[getSlot(handle)];
+    }
+
+    public int getType(int handle){
+        return type[getSlot(handle)];
+    }
+
+    public int getHp(int handle){
+        return hp[getSlot(handle)];
+    }
+
+    public void setHp(int handle, int value){
+        hp[getSlot(handle)] = value;
+    }
+
+    public int getMovementLeft(int handle){
+        return movementLeft[getSlot(handle)];
+    }
+
+    public void setMovementLeft(int handle, int value){
+        movementLeft[getSlot(handle)] = value;
+    }
+
+    //Raw columns for loops over slots 0..size-1. Adding units may replace the arrays, so fetch them again
+    //after adding. Writing positions through them bypasses the spatial hash and the listeners
+    public float[] getXs(){
+        return x;
+    }
+
+    public float[] getYs(){
+        return y;
+    }
+
+    public byte[] getOwners(){
+        return owner;
+    }
+
+    public byte[] getTypes(){
+        return type;
+    }
+
+    public int[] getHps(){
+        return hp;
+    }
+
+    public int[] getMovementLefts(){
+        return movementLeft;
+    }
+}
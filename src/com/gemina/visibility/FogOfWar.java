@@ -0,0 +1,336 @@
+package com.gemina.visibility;
+
+import com.gemina.mainframe.TerrainGrid;
+import com.gemina.mainframe.TerrainListener;
+import com.gemina.mainframe.Tile;
+import com.gemina.units.UnitListener;
+import com.gemina.units.UnitStore;
+
+import java.util.Arrays;
+
+//Which tiles each owner sees, from its units and the towers it holds. Every vision source adds one to
+//the tiles in its radius, a tile is visible while its count is above zero, so moving a unit only
+//removes and re-adds that unit's circle. Trees and rocks can block sight along the line to a tile.
+//Results are packed bitsets over the tile grid, bit i of word i >> 6 for tile index i, one for what
+//is visible now and one for what was ever seen. Not thread safe, runs on the simulation thread.
+public class FogOfWar implements TerrainListener, UnitListener {
+
+    public static final int UNIT_VISION = 4;
+    public static final int TOWER_VISION = 3;
+
+    private final TerrainGrid terrain;
+    private final UnitStore units;
+    private final int width;
+    private final int height;
+
+    private final long[][] visible;
+    private final long[][] explored;
+    private final int[][] seenCount;
+    private final long[] blocking;
+    private boolean blockSight = true;
+    //bumped whenever a visible or explored bit changes
+    private long version;
+
+    //vision sources, free ids are chained through sourceRadius
+    private int[] sourceOwner = new int[64];
+    private int[] sourceX = new int[64];
+    private int[] sourceY = new int[64];
+    private int[] sourceRadius = new int[64];
+    private int sourceCount;
+    private int freeSource = -1;
+    //source of each unit handle and of each tower tile, -1 when there is none
+    private int[] unitSource = new int[64];
+    private final int[] towerSource;
+
+    public FogOfWar(TerrainGrid terrain, UnitStore units){
+        this.terrain = terrain;
+        this.units = units;
+        width = terrain.getWidth();
+        height = terrain.getHeight();
+        int n = width * height;
+        int words = (n + 63) >> 6;
+        visible = new long[UnitStore.OWNERS][words];
+        explored = new long[UnitStore.OWNERS][words];
+        seenCount = new int[UnitStore.OWNERS][n];
+        blocking = new long[words];
+        towerSource = new int[n];
+        Arrays.fill(towerSource, -1);
+        Arrays.fill(unitSource, -1);
+
+        byte[] ids = terrain.getIds();
+        for (int i = 0; i < n; i++) {
+            if (Tile.blocksSight(ids[i])) {
+                blocking[i >> 6] |= 1L << i;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            addTower(i, ids[i]);
+        }
+        for (int slot = 0; slot < units.size(); slot++) {
+            unitAdded(units.getHandle(slot));
+        }
+        terrain.addListener(this);
+        units.addListener(this);
+    }
+
+    //Stops listening to the terrain and the units
+    public void destroy(){
+        terrain.removeListener(this);
+        units.removeListener(this);
+    }
+
+    public static boolean get(long[] bits, int index){
+        return (bits[index >> 6] & (1L << index)) != 0;
+    }
+
+    //Whether any bit in [from, to) is set, testing 64 tiles per word
+    public static boolean anySet(long[] bits, int from, int to){
+        if (from >= to) {
+            return false;
+        }
+        int first = from >> 6;
+        int last = (to - 1) >> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> (63 - ((to - 1) & 63));
+        if (first == last) {
+            return (bits[first] & firstMask & lastMask) != 0;
+        }
+        if ((bits[first] & firstMask) != 0 || (bits[last] & lastMask) != 0) {
+            return true;
+        }
+        for (int w = first + 1; w < last; w++) {
+            if (bits[w] != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //Whether any tile of the rectangle [x0, x1) x [y0, y1) is set, one word range per row
+    public static boolean anySet(long[] bits, int width, int x0, int y0, int x1, int y1){
+        for (int y = y0; y < y1; y++) {
+            if (anySet(bits, x0 + y * width, x1 + y * width)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isVisible(int owner, int x, int y){
+        return get(visible[owner], x + y * width);
+    }
+
+    public boolean isExplored(int owner, int x, int y){
+        return get(explored[owner], x + y * width);
+    }
+
+    //Live bitsets, read only
+    public long[] getVisible(int owner){
+        return visible[owner];
+    }
+
+    public long[] getExplored(int owner){
+        return explored[owner];
+    }
+
+    public long getVersion(){
+        return version;
+    }
+
+    //Turns blocking by trees and rocks on or off, every source is recomputed
+    public void setBlockSight(boolean block){
+        if (block == blockSight) {
+            return;
+        }
+        stampAll(-1);
+        blockSight = block;
+        stampAll(1);
+    }
+
+    private void stampAll(int delta){
+        for (int source = 0; source < sourceCount; source++) {
+            if (sourceOwner[source] >= 0) {
+                stamp(source, delta);
+            }
+        }
+    }
+
+    private int tileX(float x){
+        return Math.min(Math.max((int) Math.floor(x / Tile.getWidth()), 0), width - 1);
+    }
+
+    private int tileY(float y){
+        return Math.min(Math.max((int) Math.floor(y / Tile.getHeight()), 0), height - 1);
+    }
+
+    private int addSource(int owner, int x, int y, int radius){
+        int source;
+        if (freeSource >= 0) {
+            source = freeSource;
+            freeSource = sourceRadius[source];
+        } else {
+            if (sourceCount == sourceOwner.length) {
+                int capacity = sourceCount * 2;
+                sourceOwner = Arrays.copyOf(sourceOwner, capacity);
+                sourceX = Arrays.copyOf(sourceX, capacity);
+                sourceY = Arrays.copyOf(sourceY, capacity);
+                sourceRadius = Arrays.copyOf(sourceRadius, capacity);
+            }
+            source = sourceCount++;
+        }
+        sourceOwner[source] = owner;
+        sourceX[source] = x;
+        sourceY[source] = y;
+        sourceRadius[source] = radius;
+        stamp(source, 1);
+        return source;
+    }
+
+    private void removeSource(int source){
+        stamp(source, -1);
+        sourceOwner[source] = -1;
+        sourceRadius[source] = freeSource;
+        freeSource = source;
+    }
+
+    private void moveSource(int source, int x, int y){
+        if (sourceX[source] != x || sourceY[source] != y) {
+            stamp(source, -1);
+            sourceX[source] = x;
+            sourceY[source] = y;
+            stamp(source, 1);
+        }
+    }
+
+    //Adds or removes one sighting of every tile the source sees
+    private void stamp(int source, int delta){
+        int owner = sourceOwner[source];
+        int sx = sourceX[source];
+        int sy = sourceY[source];
+        int radius = sourceRadius[source];
+        int[] count = seenCount[owner];
+        long[] seen = visible[owner];
+        long[] ever = explored[owner];
+        //radius^2 + radius rounds the circle so single tiles do not stick out at the axes
+        int limit = radius * radius + radius;
+        for (int y = Math.max(0, sy - radius); y <= Math.min(height - 1, sy + radius); y++) {
+            for (int x = Math.max(0, sx - radius); x <= Math.min(width - 1, sx + radius); x++) {
+                int dx = x - sx;
+                int dy = y - sy;
+                if (dx * dx + dy * dy > limit || (blockSight && !lineOfSight(sx, sy, x, y))) {
+                    continue;
+                }
+                int i = x + y * width;
+                count[i] += delta;
+                if (delta > 0 && count[i] == 1) {
+                    long bit = 1L << i;
+                    ever[i >> 6] |= bit;
+                    seen[i >> 6] |= bit;
+                    version++;
+                } else if (delta < 0 && count[i] == 0) {
+                    seen[i >> 6] &= ~(1L << i);
+                    version++;
+                }
+            }
+        }
+    }
+
+    //Walks the grid line between two tiles, blocked by any blocking tile strictly between them
+    private boolean lineOfSight(int x0, int y0, int x1, int y1){
+        if (x0 == x1 && y0 == y1) {
+            return true;
+        }
+        int dx = Math.abs(x1 - x0);
+        int dy = -Math.abs(y1 - y0);
+        int stepX = x0 < x1 ? 1 : -1;
+        int stepY = y0 < y1 ? 1 : -1;
+        int error = dx + dy;
+        int x = x0;
+        int y = y0;
+        while (true) {
+            int twice = 2 * error;
+            if (twice >= dy) {
+                error += dy;
+                x += stepX;
+            }
+            if (twice <= dx) {
+                error += dx;
+                y += stepY;
+            }
+            if (x == x1 && y == y1) {
+                return true;
+            }
+            if (get(blocking, x + y * width)) {
+                return false;
+            }
+        }
+    }
+
+    private void addTower(int index, int id){
+        int owner = id - 4;
+        if (Tile.isCapturePoint(id) && owner != UnitStore.NEUTRAL) {
+            towerSource[index] = addSource(owner, index % width, index / width, TOWER_VISION);
+        }
+    }
+
+    @Override
+    public void tileChanged(int x, int y, int oldId, int newId){
+        int index = x + y * width;
+        if (towerSource[index] >= 0) {
+            removeSource(towerSource[index]);
+            towerSource[index] = -1;
+        }
+        if (Tile.blocksSight(oldId) != Tile.blocksSight(newId)) {
+            //sources that may look across the tile are recomputed around the change
+            boolean nearby = false;
+            for (int source = 0; source < sourceCount && blockSight; source++) {
+                if (sourceOwner[source] >= 0 && isNear(source, x, y)) {
+                    stamp(source, -1);
+                    nearby = true;
+                }
+            }
+            blocking[index >> 6] ^= 1L << index;
+            for (int source = 0; source < sourceCount && nearby; source++) {
+                if (sourceOwner[source] >= 0 && isNear(source, x, y)) {
+                    stamp(source, 1);
+                }
+            }
+        }
+        addTower(index, newId);
+    }
+
+    private boolean isNear(int source, int x, int y){
+        int radius = sourceRadius[source];
+        return Math.abs(sourceX[source] - x) <= radius && Math.abs(sourceY[source] - y) <= radius;
+    }
+
+    @Override
+    public void unitAdded(int handle){
+        if (handle >= unitSource.length) {
+            int old = unitSource.length;
+            unitSource = Arrays.copyOf(unitSource, Math.max(handle + 1, old * 2));
+            Arrays.fill(unitSource, old, unitSource.length, -1);
+        }
+        int owner = units.getOwner(handle);
+        if (owner != UnitStore.NEUTRAL) {
+            unitSource[handle] = addSource(owner, tileX(units.getX(handle)), tileY(units.getY(handle)), UNIT_VISION);
+        }
+    }
+
+    @Override
+    public void unitMoved(int handle, float oldX, float oldY){
+        int source = unitSource[handle];
+        if (source >= 0) {
+            moveSource(source, tileX(units.getX(handle)), tileY(units.getY(handle)));
+        }
+    }
+
+    @Override
+    public void unitRemoved(int handle){
+        int source = unitSource[handle];
+        if (source >= 0) {
+            removeSource(source);
+            unitSource[handle] = -1;
+        }
+    }
+}